@@ -0,0 +1,84 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Temporary SQLite database of a benchmark fork. The persistence unit is
+ * started once per process, so every benchmark which uses the database has to
+ * create it before anything starts the persistence unit.
+ *
+ * @author Rolandas
+ *
+ */
+
+final class BenchmarkDatabase {
+	private static Path directory;
+
+	private BenchmarkDatabase() {
+	}
+
+	/**
+	 * Points the persistence unit to a new empty database file
+	 *
+	 * @throws IOException
+	 */
+	static synchronized void create() throws IOException {
+		if (directory == null) {
+			directory = Files.createTempDirectory("cities-benchmark");
+			CitiesPersistence.setDatabaseURL("jdbc:sqlite:" + directory.resolve("CitiesDataDB.db"));
+		}
+	}
+
+	/**
+	 * @return Directory of the database, which also receives other temporary
+	 *         files of the benchmark
+	 */
+	static Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Saves the cities the same way the import does, in chunks of batchSize
+	 * cities
+	 *
+	 * @return The import used to save the cities
+	 */
+	static CitiesDataImport persist(List<City> cities, int batchSize) {
+		CitiesDataImport cdi = new CitiesDataImport("");
+		for (int from = 0; from < cities.size(); from += batchSize) {
+			cdi.cityList.addAll(cities.subList(from, Math.min(from + batchSize, cities.size())));
+			cdi.PersistData();
+		}
+		return cdi;
+	}
+
+	/**
+	 * Deletes every city, so the next import saves all of them again
+	 */
+	static void clear() throws SQLException {
+		try (Connection connection = CitiesPersistence.openConnection();
+				Statement statement = connection.createStatement()) {
+			statement.executeUpdate("DELETE FROM " + CityBoundsIndex.TABLE);
+			statement.executeUpdate("DELETE FROM CITY");
+		}
+	}
+
+	static synchronized void delete() throws IOException {
+		if (directory == null) {
+			return;
+		}
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Entry point of the benchmark jar. It runs JMH with the given arguments and,
+ * unless a result file is requested explicitly, records the results as JSON
+ * in results/jmh-&lt;timestamp&gt;.json, so runs can be compared over time.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class BenchmarkMain {
+	static final String RESULTS_DIRECTORY = "results";
+
+	public static void main(String[] args) throws IOException {
+		List<String> arguments = new ArrayList<>(Arrays.asList(args));
+		boolean run = !arguments.contains("-h") && !arguments.contains("-l") && !arguments.contains("-lp");
+		if (run && !arguments.contains("-rf") && !arguments.contains("-rff")) {
+			Path results = Paths.get(RESULTS_DIRECTORY);
+			Files.createDirectories(results);
+			String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+			arguments.addAll(Arrays.asList("-rf", "json", "-rff",
+					results.resolve("jmh-" + timestamp + ".json").toString()));
+		}
+		org.openjdk.jmh.Main.main(arguments.toArray(new String[0]));
+	}
+}
@@ -0,0 +1,199 @@
+package citiesDistance;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Deterministic source of the benchmark cities. A dataset is either one of the
+ * bundled input files (for example "500_europe_cities"), geocoded with the
+ * generated responses of {@link GeocodeResponses}, or a number of synthetic
+ * cities. The synthetic cities are clustered around random regional centres
+ * across Europe, like real settlements, and scale to millions of cities.
+ *
+ * @author Rolandas
+ *
+ */
+
+public final class CityGenerator {
+	static final String INPUT_DIRECTORY = "../input";
+	private static final long SEED = 42;
+	private static final int REGIONS = 500;
+	private static final int COUNTRIES = 50;
+
+	private CityGenerator() {
+	}
+
+	/**
+	 * @param dataset Name of a bundled input file without the extension, or the
+	 *                number of synthetic cities
+	 * @return The cities of the dataset, without ids
+	 * @throws IOException
+	 */
+	public static List<City> cities(String dataset) throws IOException {
+		if (dataset.chars().allMatch(Character::isDigit)) {
+			return synthetic(Integer.parseInt(dataset));
+		}
+		List<City> cities = new ArrayList<>();
+		GeocodeResponseParser parser = new GeocodeResponseParser();
+		for (String[] row : readRows(inputFile(dataset))) {
+			cities.add(geocode(parser, row[0], row[1]));
+		}
+		return cities;
+	}
+
+	/**
+	 * @return The dataset as the in-memory engines load it, with the ids assigned
+	 *         in order
+	 */
+	public static CityDataset dataset(String dataset) throws IOException {
+		List<City> cities = cities(dataset);
+		CityDataset columns = new CityDataset(cities.size());
+		for (int i = 0; i < cities.size(); i++) {
+			columns.set(i, cities.get(i));
+			columns.ids[i] = i + 1;
+		}
+		return columns;
+	}
+
+	/**
+	 * Generates the synthetic cities. The same count always gives the same
+	 * cities, and a smaller count gives a prefix of a larger one.
+	 *
+	 * @param count Number of cities
+	 * @return The generated cities
+	 */
+	public static List<City> synthetic(int count) {
+		Random random = new Random(SEED);
+		double[] regionLat = new double[REGIONS];
+		double[] regionLon = new double[REGIONS];
+		for (int i = 0; i < REGIONS; i++) {
+			regionLat[i] = 36 + random.nextDouble() * 34;
+			regionLon[i] = -10 + random.nextDouble() * 50;
+		}
+
+		List<City> cities = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int region = random.nextInt(REGIONS);
+			double lat = clamp(regionLat[region] + random.nextGaussian() * 0.8, -89, 89);
+			double lon = clamp(regionLon[region] + random.nextGaussian() * 1.2, -179, 179);
+			double height = 0.005 + random.nextDouble() * random.nextDouble() * 0.2;
+			double width = 0.005 + random.nextDouble() * random.nextDouble() * 0.3;
+			Bounds bounds = new Bounds(new Coordinates(lat + height, lon + width),
+					new Coordinates(lat - height, lon - width));
+			cities.add(new City("synthetic-" + i, "City" + i, "Country" + (i % COUNTRIES), bounds,
+					new Location(lat, lon)));
+		}
+		return cities;
+	}
+
+	/**
+	 * Writes a CSV in the import format: the bundled file is copied, a number
+	 * gives synthetic city and country names
+	 *
+	 * @return The CSV file
+	 * @throws IOException
+	 */
+	public static Path csv(String dataset, Path directory) throws IOException {
+		if (!dataset.chars().allMatch(Character::isDigit)) {
+			return inputFile(dataset).toAbsolutePath();
+		}
+		int count = Integer.parseInt(dataset);
+		Path csv = directory.resolve("synthetic_" + count + ".csv");
+		try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+			writer.write("name_en;name_en\n");
+			for (int i = 0; i < count; i++) {
+				writer.write("City" + i + ";Country" + (i % COUNTRIES) + "\n");
+			}
+		}
+		return csv;
+	}
+
+	/**
+	 * Writes a tab separated GeoNames dump of the synthetic cities for
+	 * {@link GazetteerImport}. Every second row has the bounds columns, the
+	 * others only a population, as in a plain GeoNames dump.
+	 *
+	 * @param count     Number of synthetic cities
+	 * @param directory
+	 * @return The dump file
+	 * @throws IOException
+	 */
+	public static Path gazetteer(int count, Path directory) throws IOException {
+		Path dump = directory.resolve("synthetic_" + count + ".txt");
+		try (BufferedWriter writer = Files.newBufferedWriter(dump, StandardCharsets.UTF_8)) {
+			int i = 0;
+			for (City city : synthetic(count)) {
+				Bounds bounds = city.getBounds();
+				writer.write(i + "\t" + city.getName() + "\t" + city.getName() + "\t\t"
+						+ city.getLocation().getLatitude() + "\t" + city.getLocation().getLongitude()
+						+ "\tP\tPPL\tLT\t\t\t\t\t\t" + (i * 7919 % 100000) + "\t\t\tEurope/Vilnius\t2020-01-01");
+				if (i % 2 == 0) {
+					writer.write("\t" + bounds.getSouthWest().getLatitude() + "\t" + bounds.getSouthWest().getLongitude()
+							+ "\t" + bounds.getNorthEast().getLatitude() + "\t" + bounds.getNorthEast().getLongitude());
+				}
+				writer.write('\n');
+				i++;
+			}
+		}
+		return dump;
+	}
+
+	/**
+	 * Generates random points of the area covered by the synthetic cities
+	 *
+	 * @return Array of {latitudes, longitudes}
+	 */
+	public static double[][] points(int count, long seed) {
+		Random random = new Random(seed);
+		double[][] points = new double[2][count];
+		for (int i = 0; i < count; i++) {
+			points[0][i] = 36 + random.nextDouble() * 34;
+			points[1][i] = -10 + random.nextDouble() * 50;
+		}
+		return points;
+	}
+
+	private static City geocode(GeocodeResponseParser parser, String cityName, String countryName)
+			throws IOException {
+		byte[] response = GeocodeResponses.response(cityName, (cityName + ";" + countryName).hashCode(), true);
+		try {
+			return parser.parse(new ByteArrayInputStream(response), cityName, countryName);
+		} catch (XMLStreamException e) {
+			throw new IOException("Generated response of " + cityName + " isn't valid", e);
+		}
+	}
+
+	private static Path inputFile(String dataset) {
+		return Paths.get(INPUT_DIRECTORY, dataset + ".csv");
+	}
+
+	/**
+	 * @return The city and country of every row, the header and the rows which
+	 *         the import skips are left out
+	 */
+	private static List<String[]> readRows(Path csv) throws IOException {
+		List<String[]> rows = new ArrayList<>();
+		List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+		for (int i = 1; i < lines.size(); i++) {
+			String[] row = lines.get(i).split(";");
+			if (row.length >= 2 && !row[0].contentEquals(row[1])) {
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+
+	private static double clamp(double value, double minimum, double maximum) {
+		return Math.max(minimum, Math.min(maximum, value));
+	}
+}
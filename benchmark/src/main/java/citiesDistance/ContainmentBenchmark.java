@@ -0,0 +1,74 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * "Which city is the point in" lookup: the {@link CityContainmentIndex} against
+ * the closest cities query of the R-tree engine, which finds the containing
+ * cities as the ones at the distance 0. Half of the points are inside the
+ * bounds of a city.
+ *
+ * @author Rolandas
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContainmentBenchmark {
+	private static final int POINTS = 1024;
+
+	@Param({ "500_europe_cities", "1000000" })
+	String cities;
+
+	private CityContainmentIndex index;
+	private RTreeQueryEngine rtree;
+	private final QueryResult result = new QueryResult();
+	private double[] latitudes, longitudes;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		CityDataset dataset = CityGenerator.dataset(cities);
+		index = new CityContainmentIndex(dataset);
+		rtree = new RTreeQueryEngine(dataset);
+		double[][] points = CityGenerator.points(POINTS, 3);
+		latitudes = points[0];
+		longitudes = points[1];
+		for (int i = 0; i < POINTS; i += 2) {
+			int city = (int) ((long) i * 7919 % dataset.size);
+			latitudes[i] = (dataset.swLat[city] + dataset.neLat[city]) / 2;
+			longitudes[i] = (dataset.swLon[city] + dataset.neLon[city]) / 2;
+		}
+	}
+
+	@Benchmark
+	public QueryResult containmentIndex() {
+		int i = next++ & (POINTS - 1);
+		index.findContaining(longitudes[i], latitudes[i], result);
+		return result;
+	}
+
+	@Benchmark
+	public QueryResult closestQuery() {
+		int i = next++ & (POINTS - 1);
+		rtree.findClosest(longitudes[i], latitudes[i], 20000, 10, result);
+		return result;
+	}
+}
@@ -0,0 +1,105 @@
+package citiesDistance;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a whole import CSV: the former BufferedReader with String.split(),
+ * the {@link CityCsvReader} and its line count. Besides the time per file, the
+ * throughput is reported in MB/s by the "megabytes" counter.
+ *
+ * @author Rolandas
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvBenchmark {
+	@Param({ "1000000" })
+	String cities;
+
+	private Path directory;
+	private Path csv;
+	private double megabytes;
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Throughput {
+		public double megabytes;
+	}
+
+	@Setup
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("csv-benchmark");
+		csv = CityGenerator.csv(cities, directory);
+		megabytes = Files.size(csv) / (1024.0 * 1024.0);
+	}
+
+	@Benchmark
+	public int bufferedReaderSplit(Throughput throughput) throws IOException {
+		int length = 0;
+		try (BufferedReader reader = new BufferedReader(new FileReader(csv.toFile()))) {
+			String row;
+			for (int i = 0; (row = reader.readLine()) != null; i++) {
+				if (i != 0) {
+					String[] data = row.split(";");
+					length += data[0].length() + data[1].length();
+				}
+			}
+		}
+		throughput.megabytes += megabytes;
+		return length;
+	}
+
+	@Benchmark
+	public int cityCsvReader(Throughput throughput) throws IOException {
+		int length = 0;
+		try (CityCsvReader reader = new CityCsvReader(csv)) {
+			while (reader.next()) {
+				if (reader.getRow() != 0) {
+					length += reader.getField(0).length() + reader.getField(1).length();
+				}
+			}
+		}
+		throughput.megabytes += megabytes;
+		return length;
+	}
+
+	@Benchmark
+	public long countRows(Throughput throughput) throws IOException {
+		long rows = CityCsvReader.countRows(csv);
+		throughput.megabytes += megabytes;
+		return rows;
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		// The bundled input files are read in place
+		if (csv.startsWith(directory)) {
+			Files.delete(csv);
+		}
+		Files.delete(directory);
+	}
+}
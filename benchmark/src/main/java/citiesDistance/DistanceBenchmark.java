@@ -0,0 +1,71 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Distance from a point to the bounds of every city, with the entity objects
+ * used by {@link DistanceCalculator#getDistanceFromBounds(Coordinates, Bounds)}
+ * and with the primitive columns of the in-memory engines. One operation is a
+ * full scan of the dataset.
+ *
+ * @author Rolandas
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DistanceBenchmark {
+	@Param({ "500_europe_cities", "1000000" })
+	String cities;
+
+	private List<City> cityList;
+	private CityDataset dataset;
+	private Coordinates point;
+
+	@Setup
+	public void setUp() throws IOException {
+		cityList = CityGenerator.cities(cities);
+		dataset = CityGenerator.dataset(cities);
+		double[][] points = CityGenerator.points(1, 1);
+		point = new Coordinates(points[0][0], points[1][0]);
+	}
+
+	@Benchmark
+	public double entityBounds() {
+		double closest = Double.MAX_VALUE;
+		for (City city : cityList) {
+			closest = Math.min(closest, DistanceCalculator.getDistanceFromBounds(point, city.getBounds()));
+		}
+		return closest;
+	}
+
+	@Benchmark
+	public double columnBounds() {
+		double lat = point.getLatitude();
+		double lon = point.getLongitude();
+		double closest = Double.MAX_VALUE;
+		for (int i = 0; i < dataset.size; i++) {
+			closest = Math.min(closest, GeoUtils.distanceFromBounds(lat, lon, dataset.swLat[i], dataset.swLon[i],
+					dataset.neLat[i], dataset.neLon[i]));
+		}
+		return closest;
+	}
+}
@@ -0,0 +1,74 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bulk import of a GeoNames dump with {@link GazetteerImport} into a temporary
+ * database, with and without filling the R*Tree index of the jpql engine
+ *
+ * @author Rolandas
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GazetteerBenchmark {
+	@Param({ "100000" })
+	int cities;
+
+	@Param({ "false", "true" })
+	boolean indexBounds;
+
+	private Path dump;
+	private GazetteerImport gazetteer;
+
+	@Setup
+	public void setUp() throws IOException {
+		BenchmarkDatabase.create();
+		dump = CityGenerator.gazetteer(cities, BenchmarkDatabase.getDirectory());
+	}
+
+	/**
+	 * Starts every iteration with an empty database, as the import skips the
+	 * places which are already saved
+	 */
+	@Setup(Level.Iteration)
+	public void setUpIteration() throws SQLException {
+		gazetteer = new GazetteerImport();
+		gazetteer.setIndexBounds(indexBounds);
+		// Creates the schema with the R*Tree table before it is cleared
+		new CitiesDataImport("benchmark");
+		BenchmarkDatabase.clear();
+	}
+
+	@Benchmark
+	public int importFile() throws IOException, SQLException {
+		return gazetteer.importFile(dump);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		BenchmarkDatabase.delete();
+	}
+}
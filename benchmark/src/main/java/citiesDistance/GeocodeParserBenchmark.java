@@ -0,0 +1,68 @@
+package citiesDistance;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the single-pass StAX parser of the geocode responses with the former
+ * XSD validation + DOM + XPath path. The legacy path gets the response as the
+ * StringBuffer it used to download into.
+ * 
+ * @author Rolandas
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeocodeParserBenchmark {
+	@Param({ "true", "false" })
+	boolean withBounds;
+
+	@Param({ "../input/CityResponseSchema.xsd" })
+	String xsdPath;
+
+	private byte[] response;
+	private StringBuffer responseBuffer;
+	private GeocodeResponseParser parser;
+	private LegacyResponseParser legacyParser;
+
+	@Setup
+	public void setUp() {
+		response = GeocodeResponses.response("Vilnius", 42, withBounds);
+		responseBuffer = new StringBuffer(new String(response, StandardCharsets.UTF_8));
+		parser = new GeocodeResponseParser();
+		legacyParser = new LegacyResponseParser(xsdPath);
+	}
+
+	@Benchmark
+	public City stax() throws XMLStreamException {
+		return parser.parse(new ByteArrayInputStream(response), "Vilnius", "Lithuania");
+	}
+
+	@Benchmark
+	public City legacyDomXsdXPath() {
+		if (!legacyParser.ValidateCityXML(responseBuffer, "Vilnius", "Lithuania")) {
+			throw new IllegalStateException("Generated response isn't valid");
+		}
+		return legacyParser.ParseCityXML(responseBuffer, "Vilnius", "Lithuania");
+	}
+}
@@ -0,0 +1,105 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole import pipeline of a CSV against a temporary database: reading,
+ * downloading from the local {@link StubGeocoder} over HTTP or calling it
+ * in-process, parsing and saving in chunks.
+ * The progress the import prints for every row is discarded, so it doesn't
+ * flood the benchmark output.
+ *
+ * @author Rolandas
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImportBenchmark {
+	@Param({ "500_europe_cities", "10000" })
+	String cities;
+
+	@Param({ "1000" })
+	int batchSize;
+
+	@Param({ "8" })
+	int concurrency;
+
+	@Param({ "http", "in-process" })
+	String transport;
+
+	private StubGeocoder geocoder;
+	private Path csv;
+	private CitiesDataImport cdi;
+	private PrintStream console;
+
+	@Setup
+	public void setUp() throws IOException {
+		BenchmarkDatabase.create();
+		geocoder = new StubGeocoder(4);
+		csv = CityGenerator.csv(cities, BenchmarkDatabase.getDirectory());
+		console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+	}
+
+	/**
+	 * Starts every iteration with an empty database, as the import skips the
+	 * cities which are already saved
+	 */
+	@Setup(Level.Iteration)
+	public void setUpIteration() throws SQLException {
+		cdi = new CitiesDataImport("benchmark");
+		BenchmarkDatabase.clear();
+		cdi.setBaseURL(geocoder.getURL());
+		if (transport.equals("in-process")) {
+			cdi.setGeocoder(geocoder);
+		}
+		cdi.setBatchSize(batchSize);
+		cdi.setConcurrency(concurrency);
+	}
+
+	@Benchmark
+	public int readCsv() throws IOException {
+		cdi.ReadCSV(csv.toString());
+		cdi.PersistData();
+		return cdi.getFailedRows();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		System.setOut(console);
+		geocoder.close();
+		BenchmarkDatabase.delete();
+	}
+}
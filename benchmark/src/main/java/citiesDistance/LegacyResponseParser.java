@@ -0,0 +1,170 @@
+package citiesDistance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * The response handling of CitiesDataImport before the StAX parser: a new
+ * schema per validation, a DOM per response and freshly compiled XPath
+ * expressions per value. Kept as the baseline of the parser benchmark.
+ * 
+ * @author Rolandas
+ *
+ */
+
+public class LegacyResponseParser {
+	Source xsdSchema;
+
+	LegacyResponseParser(String xsdPath) {
+		xsdSchema = new StreamSource(new File(xsdPath));
+	}
+
+	/**
+	 * Validates the XML for fields required for City object creation
+	 * 
+	 * @param xml
+	 * @param cityName
+	 * @param countryName
+	 * @return XML is valid if true, not valid if false
+	 */
+	boolean ValidateCityXML(StringBuffer xml, String cityName, String countryName) {
+		Source streamSource = new StreamSource(new StringReader(xml.toString()));
+
+		try {
+			SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+			Schema schema = schemaFactory.newSchema(xsdSchema);
+			Validator validator = schema.newValidator();
+			validator.validate(streamSource);
+		} catch (SAXException e) {
+			System.out.println(cityName + "(" + countryName + ")" + "XML response is not valid. Reason:" + e);
+			return false;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Parse the XMLdata to create a City object
+	 * 
+	 * @param xml
+	 * @param cityName
+	 * @param countryName
+	 */
+	City ParseCityXML(StringBuffer xml, String cityName, String countryName) {
+		try {
+			StringReader reader = new StringReader(xml.toString());
+			InputSource is = new InputSource(reader);
+
+			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+			DocumentBuilder db = dbf.newDocumentBuilder();
+			Document doc = db.parse(is);
+
+			XPathFactory xpathfactory = XPathFactory.newInstance();
+			XPath xpath = xpathfactory.newXPath();
+			XPathExpression expr;
+
+			String uuid;
+			Location location;
+			Bounds cityBounds;
+			Coordinates coordNE, coordSW;
+			double latitude, longitude;
+
+			expr = xpath.compile("//result/place_id/text()");
+			uuid = GetXMLNodeData(doc, expr).toString();
+
+			expr = xpath.compile("//result/geometry/location/lat/text()");
+			latitude = Double.parseDouble(GetXMLNodeData(doc, expr));
+
+			expr = xpath.compile("//result/geometry/location/lng/text()");
+			longitude = Double.parseDouble(GetXMLNodeData(doc, expr));
+
+			location = new Location(latitude, longitude);
+
+			String boundsStr;
+			// City XML sometimes has Viewport instead of Bounds so it's important to
+			// account for that
+			expr = xpath.compile("//result/geometry/bounds");
+			if (GetXMLNodeExists(doc, expr)) {
+				boundsStr = "bounds";
+			} else {
+				boundsStr = "viewport";
+			}
+
+			expr = xpath.compile("//result/geometry/" + boundsStr + "/northeast/lat/text()");
+			latitude = Double.parseDouble(GetXMLNodeData(doc, expr));
+
+			expr = xpath.compile("//result/geometry/" + boundsStr + "/northeast/lng/text()");
+			longitude = Double.parseDouble(GetXMLNodeData(doc, expr));
+
+			coordNE = new Coordinates(latitude, longitude);
+
+			expr = xpath.compile("//result/geometry/" + boundsStr + "/southwest/lat/text()");
+			latitude = Double.parseDouble(GetXMLNodeData(doc, expr));
+
+			expr = xpath.compile("//result/geometry/" + boundsStr + "/southwest/lng/text()");
+			longitude = Double.parseDouble(GetXMLNodeData(doc, expr));
+
+			coordSW = new Coordinates(latitude, longitude);
+
+			cityBounds = new Bounds(coordNE, coordSW);
+
+			return new City(uuid, cityName, countryName, cityBounds, location);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Error while parsing the XML data");
+			return null;
+		}
+	}
+
+	private String GetXMLNodeData(Document doc, XPathExpression xpath) {
+		Object result = null;
+		try {
+			result = xpath.evaluate(doc, XPathConstants.NODE);
+		} catch (XPathExpressionException e) {
+			System.out.println("Error evaluating xpath:" + xpath.toString());
+			e.printStackTrace();
+		}
+		Node node = (Node) result;
+		if (node != null) {
+			return node.getNodeValue();
+		} else {
+			return null;
+		}
+	}
+
+	private boolean GetXMLNodeExists(Document doc, XPathExpression xpath) {
+		Object result = null;
+		try {
+			result = xpath.evaluate(doc, XPathConstants.NODE);
+		} catch (XPathExpressionException e) {
+			System.out.println("Error evaluating xpath:" + xpath.toString());
+			e.printStackTrace();
+		}
+		Node node = (Node) result;
+		if (node != null) {
+			return true;
+		} else {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of the {@link Metrics}: recording a latency and a counter on their
+ * own, and the in-memory query through {@link DistanceCalculator} with the
+ * metrics enabled and disabled.
+ *
+ * @author Rolandas
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+	private static final int POINTS = 1024;
+
+	@Param({ "true", "false" })
+	boolean metrics;
+
+	private final LatencyHistogram histogram = Metrics.histogram("benchmark.latency");
+	private final Metrics.Counter counter = Metrics.counter("benchmark.count");
+	private DistanceCalculator calculator;
+	private final QueryResult result = new QueryResult();
+	private double[] latitudes, longitudes;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		Metrics.setEnabled(metrics);
+		BenchmarkDatabase.create();
+		BenchmarkDatabase.persist(CityGenerator.cities("10000"), CitiesDataImport.DEFAULT_BATCH_SIZE);
+		calculator = DistanceCalculator.getInstance();
+		calculator.setLimit(10);
+		calculator.setSearchRadius(20000);
+		calculator.setEngineName(DistanceCalculator.ENGINE_RTREE);
+		double[][] points = CityGenerator.points(POINTS, 5);
+		latitudes = points[0];
+		longitudes = points[1];
+	}
+
+	@Benchmark
+	public void recordLatency() {
+		histogram.stop(histogram.start());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void recordLatencyContended() {
+		histogram.stop(histogram.start());
+	}
+
+	@Benchmark
+	public void incrementCounter() {
+		counter.increment();
+	}
+
+	@Benchmark
+	public QueryResult query() {
+		int i = next++ & (POINTS - 1);
+		calculator.findClosest(longitudes[i], latitudes[i], result);
+		return result;
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Metrics.setEnabled(true);
+		BenchmarkDatabase.delete();
+	}
+}
@@ -0,0 +1,71 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saving one chunk of cities with {@link CitiesDataImport#PersistData()}: the
+ * batched inserts of the cities and their R*Tree index rows in one
+ * transaction. The database keeps the chunks of the earlier iterations, as it
+ * does during an import.
+ *
+ * @author Rolandas
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class PersistBenchmark {
+	@Param({ "100", "1000", "10000" })
+	int batchSize;
+
+	private CitiesDataImport cdi;
+	private List<City> chunk;
+	private int chunkNumber;
+
+	@Setup
+	public void setUp() throws IOException {
+		BenchmarkDatabase.create();
+		cdi = new CitiesDataImport("benchmark");
+	}
+
+	/**
+	 * Entities can only be saved once, so every iteration gets new cities
+	 */
+	@Setup(Level.Iteration)
+	public void setUpIteration() {
+		chunk = CityGenerator.synthetic(batchSize * (chunkNumber + 1)).subList(batchSize * chunkNumber,
+				batchSize * (chunkNumber + 1));
+		chunkNumber++;
+	}
+
+	@Benchmark
+	public void persistData() {
+		cdi.cityList.addAll(chunk);
+		cdi.PersistData();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		BenchmarkDatabase.delete();
+	}
+}
@@ -0,0 +1,91 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Closest cities lookup through {@link DistanceCalculator}, as the console and
+ * the query server run it. The cities are saved to a temporary database first,
+ * so the jpql engine runs its native distance query against SQLite. The
+ * clustered traffic sends the points in small areas around a few hot spots,
+ * which is what the result cache is meant for. Run with -prof gc to check that
+ * the in-memory engines don't allocate per query.
+ *
+ * @author Rolandas
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+	private static final int POINTS = 4096;
+	private static final int HOT_SPOTS = 64;
+
+	@Param({ "jpql", "rtree", "rtree-cached", "scan" })
+	String engine;
+
+	@Param({ "500_europe_cities", "100000" })
+	String cities;
+
+	@Param({ "uniform", "clustered" })
+	String traffic;
+
+	private DistanceCalculator calculator;
+	private final QueryResult result = new QueryResult();
+	private double[] latitudes, longitudes;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		BenchmarkDatabase.create();
+		BenchmarkDatabase.persist(CityGenerator.cities(cities), CitiesDataImport.DEFAULT_BATCH_SIZE);
+
+		calculator = DistanceCalculator.getInstance();
+		calculator.setLimit(10);
+		calculator.setSearchRadius(20000);
+		calculator.setEngineName(engine.replace("-cached", ""));
+		calculator.setResultCacheSize(engine.endsWith("-cached") ? 100000 : 0);
+
+		double[][] points = CityGenerator.points(POINTS, 7);
+		latitudes = points[0];
+		longitudes = points[1];
+		if (traffic.equals("clustered")) {
+			Random random = new Random(7);
+			for (int i = 0; i < POINTS; i++) {
+				int spot = random.nextInt(HOT_SPOTS);
+				latitudes[i] = points[0][spot] + random.nextGaussian() * 0.002;
+				longitudes[i] = points[1][spot] + random.nextGaussian() * 0.002;
+			}
+		}
+	}
+
+	@Benchmark
+	public QueryResult findClosest() {
+		int i = next++ & (POINTS - 1);
+		calculator.findClosest(longitudes[i], latitudes[i], result);
+		return result;
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		BenchmarkDatabase.delete();
+	}
+}
@@ -0,0 +1,102 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Brute-force closest cities search: the {@link ScanQueryEngine} with its
+ * float lower bound pass, the plain scalar loop which calculates the exact
+ * distance of every city, and the R-tree engine for reference. The JPQL path is
+ * measured by {@link QueryBenchmark}.
+ *
+ * @author Rolandas
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark {
+	private static final int POINTS = 1024;
+
+	@Param({ "500_europe_cities", "100000", "1000000" })
+	String cities;
+
+	@Param({ "10" })
+	int limit;
+
+	@Param({ "20000" })
+	int searchRadius;
+
+	private CityDataset dataset;
+	private ScanQueryEngine scan;
+	private RTreeQueryEngine rtree;
+	private final QueryResult result = new QueryResult();
+	private final MinHeap closest = new MinHeap(64);
+	private double[] latitudes, longitudes;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		dataset = CityGenerator.dataset(cities);
+		scan = new ScanQueryEngine(dataset);
+		rtree = new RTreeQueryEngine(dataset);
+		double[][] points = CityGenerator.points(POINTS, 11);
+		latitudes = points[0];
+		longitudes = points[1];
+	}
+
+	@Benchmark
+	public QueryResult lowerBoundScan() {
+		int i = next++ & (POINTS - 1);
+		scan.findClosest(longitudes[i], latitudes[i], searchRadius, limit, result);
+		return result;
+	}
+
+	/**
+	 * Exact distance of every city, the closest ones kept in the same heap
+	 */
+	@Benchmark
+	public double scalarScan() {
+		int point = next++ & (POINTS - 1);
+		double lat = latitudes[point];
+		double lon = longitudes[point];
+		closest.clear();
+		for (int i = 0; i < dataset.size; i++) {
+			double distance = GeoUtils.distanceFromBounds(lat, lon, dataset.swLat[i], dataset.swLon[i],
+					dataset.neLat[i], dataset.neLon[i]);
+			if (distance > searchRadius) {
+				continue;
+			}
+			if (closest.size() < limit) {
+				closest.push(-distance, i);
+			} else if (distance < -closest.peekKey()) {
+				closest.pop();
+				closest.push(-distance, i);
+			}
+		}
+		return closest.peekKey();
+	}
+
+	@Benchmark
+	public QueryResult rtree() {
+		int i = next++ & (POINTS - 1);
+		rtree.findClosest(longitudes[i], latitudes[i], searchRadius, limit, result);
+		return result;
+	}
+}
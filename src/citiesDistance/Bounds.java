@@ -1,53 +1,35 @@
 package citiesDistance;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import javax.persistence.CascadeType;
-import javax.persistence.Entity;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
-import javax.persistence.Id;
-import javax.persistence.OneToMany;
-import javax.persistence.OneToOne;
-import javax.persistence.OrderBy;
+import javax.persistence.AttributeOverride;
+import javax.persistence.AttributeOverrides;
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import javax.persistence.Embedded;
 
 /**
- * Represents the rectangular bounds of the city
+ * Represents the rectangular bounds of the city. The corners are stored in the
+ * SW_LATITUDE, SW_LONGITUDE, NE_LATITUDE and NE_LONGITUDE columns of the city.
  * 
  * @author Rolandas
  *
  */
 
-@Entity
+@Embeddable
 public class Bounds {
-	private final int SOUTH_WEST = 0;
-	private final int NORTH_EAST = 1;
-
-	@OneToMany(mappedBy = "bounds", cascade = CascadeType.PERSIST, orphanRemoval = true)
-	@OrderBy("id ASC")
-	private List<Coordinates> coordinates = new ArrayList<>();
-
-	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
-	private int id;
-	@OneToOne
-	private City city;
+	@Embedded
+	@AttributeOverrides({ @AttributeOverride(name = "latitude", column = @Column(name = "SW_LATITUDE")),
+			@AttributeOverride(name = "longitude", column = @Column(name = "SW_LONGITUDE")) })
+	private Coordinates southWest;
 
-	public City getCity() {
-		return city;
-	}
-
-	public void setCity(City city) {
-		this.city = city;
-	}
+	@Embedded
+	@AttributeOverrides({ @AttributeOverride(name = "latitude", column = @Column(name = "NE_LATITUDE")),
+			@AttributeOverride(name = "longitude", column = @Column(name = "NE_LONGITUDE")) })
+	private Coordinates northEast;
 
 	Bounds(Coordinates northEast, Coordinates southWest) {
 		super();
-		southWest.setBounds(this);
-		coordinates.add(southWest);
-		northEast.setBounds(this);
-		coordinates.add(northEast);
+		this.southWest = southWest;
+		this.northEast = northEast;
 	}
 
 	Bounds() {
@@ -55,21 +37,19 @@ public class Bounds {
 	}
 
 	public Coordinates getSouthWest() {
-		return coordinates.get(SOUTH_WEST);
+		return southWest;
 	}
 
 	public void setSouthWest(Coordinates southWest) {
-		southWest.setBounds(this);
-		coordinates.set(SOUTH_WEST, southWest);
+		this.southWest = southWest;
 	}
 
 	public Coordinates getNorthEast() {
-		return coordinates.get(NORTH_EAST);
+		return northEast;
 	}
 
 	public void setNorthEast(Coordinates northEast) {
-		northEast.setBounds(this);
-		coordinates.set(NORTH_EAST, northEast);
+		this.northEast = northEast;
 	}
 
 	@Override
@@ -0,0 +1,51 @@
+package citiesDistance;
+
+import java.io.IOException;
+
+/**
+ * Serves the responses of a geocoder from the on-disk {@link GeocodeCache} and
+ * stores the downloaded ones. In offline mode only the cache is used.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class CachedGeocoder implements Geocoder {
+	private static final Metrics.Counter RESPONSES_CACHED = Metrics.counter("import.responses.cached");
+
+	private final Geocoder service;
+	private final GeocodeCache cache;
+	private final boolean offline;
+
+	/**
+	 * @param service Geocoder of the responses which aren't cached
+	 * @param cache   Response cache, null to always request the service
+	 * @param offline Only replay the cached responses, without any requests
+	 */
+	public CachedGeocoder(Geocoder service, GeocodeCache cache, boolean offline) {
+		this.service = service;
+		this.cache = cache;
+		this.offline = offline;
+	}
+
+	@Override
+	public byte[] geocode(String cityName, String countryName) throws IOException {
+		if (cache != null) {
+			byte[] content = cache.get(cityName, countryName);
+			if (content != null) {
+				RESPONSES_CACHED.increment();
+				return content;
+			}
+		}
+		if (offline) {
+			throw new IOException("Offline mode: response for [" + cityName + ";"
+					+ (countryName == null ? "" : countryName) + "] isn't cached.");
+		}
+
+		byte[] content = service.geocode(cityName, countryName);
+		if (cache != null && content.length > 0) {
+			cache.put(cityName, countryName, content);
+		}
+		return content;
+	}
+}
@@ -1,65 +1,142 @@
 package citiesDistance;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.StringReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Source;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
-import javax.persistence.Persistence;
-import javax.persistence.Query;
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.transform.stream.StreamSource;
-import org.w3c.dom.Document;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.w3c.dom.Node;
+import javax.xml.stream.XMLStreamException;
 
 /**
- * The class responsible for reading a specified input CSV with
- * "cityName;cityCountry" format The data is used to download Google Maps APIs
- * XML data, which is subsequently parsed and added to the city list. The data
- * isn't immediately added to the database in order to minimize I/O performance
- * costs and instead is only added to the database when PersistData() is called.
+ * The class responsible for reading a specified input UTF-8 CSV with
+ * "cityName;cityCountry" format. Every row is geocoded through a
+ * {@link Geocoder}, and the XML response is parsed and added to the city
+ * list. The cities aren't immediately added to the database in order to
+ * minimize I/O performance costs, instead they are added in chunks of
+ * batchSize cities, each in its own transaction. The last chunk is added when
+ * PersistData() is called.
+ * 
+ * Reading, downloading, validating/parsing and persisting the cities run as
+ * separate pipeline stages connected with bounded queues, so many downloads
+ * can be in flight while the CSV is still being read. The geocoder is wrapped
+ * with the response cache and a {@link CoalescingGeocoder}, so a request is
+ * sent once even if many rows need it, and duplicate rows of the CSV are
+ * skipped. Every stage records its latency and the number of rows it handled
+ * in the "import" {@link Metrics}.
+ * 
+ * With an {@link ImportJournal}, the outcome of every row is journaled, so an
+ * interrupted import of the same file continues after the last checkpoint and
+ * doesn't download or save the finished rows again.
  * 
  * @author Rolandas
  *
  */
 
 public class CitiesDataImport {
+	static final int DEFAULT_CONCURRENCY = 8;
+
 	String filename;
 	String path;
 	private String key;
+	private String baseURL = GoogleGeocoder.DEFAULT_BASE_URL;
+	private Geocoder geocoder;
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private GeocodeCache cache;
+	private boolean offline;
+	private ImportJournal journal;
+
+	// Name and country keys of the cities already in the database
+	private Set<String> existingRecords;
+
+	static final int DEFAULT_BATCH_SIZE = 1000;
+	private int batchSize = DEFAULT_BATCH_SIZE;
 
 	// List of cities to be added to the database
 	List<City> cityList;
+	// Rows of the cities in the city list, for the journal
+	private final List<ImportTask> persistTasks = new ArrayList<>();
 	EntityManagerFactory factory;
 	EntityManager entityManager;
-	Source xsdSchema;
+	GeocodeResponseParser responseParser;
+
+	// Time between the progress lines of the read stage
+	private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+	// Marks the end of the input in the persist stage queue
+	private static final ImportTask END_OF_INPUT = new ImportTask(-1, null, null);
+
+	// Rows which were read but aren't collected or skipped yet
+	private final AtomicInteger pendingRows = new AtomicInteger();
+	private final Object pendingLock = new Object();
+
+	// Rows which couldn't be imported because of a temporary error (network,
+	// missing cached response, database), so a later import may succeed
+	private final AtomicInteger failedRows = new AtomicInteger();
+
+	// Receives every committed chunk of cities
+	private Consumer<List<City>> persistListener;
+
+	private boolean indexBounds = true;
+	// Set once the R*Tree index is created and holds the bounds of every city
+	private boolean boundsIndexSynchronized;
+
+	private static final Metrics.Counter ROWS_READ = Metrics.counter("import.rows.read");
+	private static final Metrics.Counter ROWS_SKIPPED = Metrics.counter("import.rows.skipped");
+	private static final Metrics.Counter ROWS_RESUMED = Metrics.counter("import.rows.resumed");
+	private static final Metrics.Counter ROWS_FAILED = Metrics.counter("import.rows.failed");
+	private static final Metrics.Counter RESPONSES_INVALID = Metrics.counter("import.responses.invalid");
+	private static final Metrics.Counter CITIES_PERSISTED = Metrics.counter("import.cities.persisted");
+	private static final LatencyHistogram EXISTS_TIME = Metrics.histogram("import.exists");
+	private static final LatencyHistogram PARSE_TIME = Metrics.histogram("import.parse");
+	private static final LatencyHistogram PERSIST_TIME = Metrics.histogram("import.persist");
 
 	CitiesDataImport(String key) {
 		cityList = new ArrayList<City>();
-		factory = Persistence.createEntityManagerFactory("CitiesDistance");
+		factory = CitiesPersistence.getFactory();
 		entityManager = factory.createEntityManager();
-		xsdSchema = new StreamSource(new File("input/CityResponseSchema.xsd"));
+		responseParser = new GeocodeResponseParser();
 		setKey(key);
+
+		entityManager.getTransaction().begin();
+		// Tables created before the index was declared on City don't have it yet
+		entityManager.createNativeQuery(City.CREATE_NAME_COUNTRY_INDEX).executeUpdate();
+		entityManager.getTransaction().commit();
+	}
+
+	/**
+	 * Work item passed between the pipeline stages
+	 */
+	private static class ImportTask {
+		final int row;
+		final String cityName;
+		final String countryName;
+		// Offset of the CSV after the row
+		long offset;
+		boolean fallback;
+		// A request of the row failed with a temporary error
+		boolean failed;
+		byte[] content;
+		City city;
+
+		ImportTask(int row, String cityName, String countryName) {
+			this.row = row;
+			this.cityName = cityName;
+			this.countryName = countryName;
+		}
 	}
 
 	/**
@@ -69,228 +146,329 @@ public class CitiesDataImport {
 	 * Country's data, which has much larger bounds and overlays the bounds of every
 	 * city inside (Example: Albania;Albania)
 	 * 
+	 * The rows are read on the calling thread and handed to the download stage,
+	 * which runs the configured number of concurrent requests. The method returns
+	 * once every row was saved, skipped or left in the city list for the final
+	 * PersistData() call.
+	 * 
 	 * @param path
 	 * @throws IOException
 	 */
 	public void ReadCSV(String path) throws IOException {
-		String row;
-		BufferedReader csvReader = new BufferedReader(new FileReader(path));
-		for (int i = 0; (row = csvReader.readLine()) != null; i++) {
-			if (i != 0) {
-				String[] data = row.split(";");
+		BlockingQueue<ImportTask> downloadQueue = new ArrayBlockingQueue<>(concurrency * 2);
+		BlockingQueue<ImportTask> fallbackQueue = new LinkedBlockingQueue<>();
+		BlockingQueue<ImportTask> parseQueue = new ArrayBlockingQueue<>(concurrency * 2);
+		BlockingQueue<ImportTask> persistQueue = new ArrayBlockingQueue<>(concurrency * 2);
+
+		// Loaded before the persist stage starts using the entity manager
+		LoadExistingRecords();
+		Geocoder service = geocoder != null ? geocoder : new GoogleGeocoder(baseURL, key);
+		Geocoder requests = new CoalescingGeocoder(
+				cache != null || offline ? new CachedGeocoder(service, cache, offline) : service);
+
+		int parsers = Runtime.getRuntime().availableProcessors();
+		ExecutorService workers = Executors.newFixedThreadPool(concurrency + parsers + 1);
+		for (int i = 0; i < concurrency; i++) {
+			workers.execute(() -> DownloadStage(requests, downloadQueue, fallbackQueue, parseQueue));
+		}
+		for (int i = 0; i < parsers; i++) {
+			workers.execute(() -> ParseStage(parseQueue, fallbackQueue, persistQueue));
+		}
+		Future<?> persistStage = workers.submit(() -> PersistStage(persistQueue));
 
-				String city = data[0];
-				String country = data[1];
+		try {
+			ReadStage(path, downloadQueue, persistQueue);
+			AwaitPendingRows();
+			// Let the persist stage finish its chunk instead of interrupting it
+			persistQueue.put(END_OF_INPUT);
+			persistStage.get();
+		} catch (ExecutionException e) {
+			throw new IOException("Error while saving the city data", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("City data import was interrupted", e);
+		} finally {
+			workers.shutdownNow();
+			try {
+				workers.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Reads the rows of the CSV as UTF-8 and hands them to the download stage.
+	 * The rows are counted first, so the progress shows the total and the
+	 * estimated time left. The bounded download queue blocks the reading while
+	 * the downloads are behind, so only a few rows are held in memory.
+	 * 
+	 * A resumed import starts reading after the journal checkpoint and skips the
+	 * rows finished after it. The cities geocoded by the interrupted import go
+	 * straight to the persist stage.
+	 */
+	private void ReadStage(String path, BlockingQueue<ImportTask> downloadQueue,
+			BlockingQueue<ImportTask> persistQueue) throws IOException, InterruptedException {
+		long total = Math.max(CityCsvReader.countRows(Paths.get(path)) - 1, 0);
+		long started = System.nanoTime();
+		long lastProgress = started;
+		try (CityCsvReader csvReader = new CityCsvReader(Paths.get(path))) {
+			int first = 1;
+			if (journal != null && journal.getCheckpointRow() > 0) {
+				csvReader.seek(journal.getCheckpointOffset(), journal.getCheckpointRow());
+				first = journal.getCheckpointRow() + 1;
+				System.out.println("Resuming the import of " + path + " after row " + journal.getCheckpointRow()
+						+ ", " + journal.getResumableRows() + " later rows are already finished or geocoded.");
+			}
+			while (csvReader.next()) {
+				int i = csvReader.getRow();
+				if (i == 0) {
+					continue;
+				}
+				ROWS_READ.increment();
+				if (journal != null && journal.isFinished(i)) {
+					ROWS_RESUMED.increment();
+					continue;
+				}
+				if (csvReader.getFieldCount() < 2) {
+					ROWS_SKIPPED.increment();
+					RowSkipped(i, csvReader.getBytesRead());
+					System.out.println("(" + i + "/" + total + ") " + "Row isn't in the cityName;cityCountry format."
+							+ " Skipping.");
+					continue;
+				}
+				String city = csvReader.getField(0);
+				String country = csvReader.getField(1);
 
 				if (!city.contentEquals(country)) {
-					if (!RecordExistsInDB(city, country)) {
-						System.out.println("(" + i + "/?) " + "Downloading city data from Google Maps API: [" + city
-								+ ";" + country + "]");
-						GetGoogleCityData(city, country);
+					long start = EXISTS_TIME.start();
+					boolean exists = RecordExistsInDB(city, country);
+					EXISTS_TIME.stop(start);
+					// Checked after the database, as the chunk of a geocoded city may have
+					// been committed just before the interruption
+					City geocoded = exists || journal == null ? null : journal.getGeocodedCity(i);
+					if (geocoded != null) {
+						existingRecords.add(RecordKey(city, country));
+						ROWS_RESUMED.increment();
+						ImportTask task = new ImportTask(i, city, country);
+						task.offset = csvReader.getBytesRead();
+						task.city = geocoded;
+						pendingRows.incrementAndGet();
+						persistQueue.put(task);
+					} else if (!exists) {
+						System.out.println("(" + i + "/" + total + ") "
+								+ "Downloading city data from Google Maps API: [" + city + ";" + country + "]");
+						// Later rows of the same city are skipped as already existing
+						existingRecords.add(RecordKey(city, country));
+						ImportTask task = new ImportTask(i, city, country);
+						task.offset = csvReader.getBytesRead();
+						pendingRows.incrementAndGet();
+						downloadQueue.put(task);
 					} else {
-						System.out.println("(" + i + "/?) " + "Record for [" + city + ";" + country
+						ROWS_SKIPPED.increment();
+						RowSkipped(i, csvReader.getBytesRead());
+						System.out.println("(" + i + "/" + total + ") " + "Record for [" + city + ";" + country
 								+ "] already exists in the database. Skipping.");
 					}
 				} else {
-					System.out.println("(" + i + "/?) " + "City name " + city + " = " + country
+					ROWS_SKIPPED.increment();
+					RowSkipped(i, csvReader.getBytesRead());
+					System.out.println("(" + i + "/" + total + ") " + "City name " + city + " = " + country
 							+ ". Assuming country, not city data. Skipping.");
 				}
+
+				long now = System.nanoTime();
+				if (now - lastProgress >= PROGRESS_INTERVAL) {
+					lastProgress = now;
+					PrintProgress(i, first, total, now - started);
+				}
 			}
 		}
-		csvReader.close();
+	}
+
+	private void RowSkipped(int row, long offset) {
+		if (journal != null) {
+			journal.skipped(row, offset);
+		}
 	}
 
 	/**
-	 * Download the city data XML from Google Maps API. It is necessary to have a
-	 * valid API key for this method to work.
+	 * Prints the share of the rows read and the estimated time left, assuming
+	 * the rows keep being read at the average rate so far
 	 * 
-	 * @param cityName
-	 * @param countryName
+	 * @param rows  Row read last
+	 * @param first First row read by this import, after the resumed ones
 	 */
-	private void GetGoogleCityData(String cityName, String countryName) {
-		String baseURL = "https://maps.googleapis.com/maps/api/geocode/xml?address=";
-		String countryURL = "&components=country:";
-		String keyURL = "&key=";
-
-		String fullURL = baseURL + cityName + countryURL + countryName + keyURL + key;
-
-		StringBuffer content = new StringBuffer();
-		content = DownloadCityData(fullURL);
-
-		boolean valid = ValidateCityXML(content, cityName, countryName);
-		if (valid) {
-			ParseCityXML(content, cityName, countryName);
-		} else {
-			System.out.println("Response XML isn't valid. Trying URL with the city name only."); 	
-			fullURL = baseURL + cityName + keyURL + key;
-			content = DownloadCityData(fullURL);
-			valid = ValidateCityXML(content, cityName, countryName);
-			if (valid) {
-				ParseCityXML(content, cityName, countryName);
-			} else {
-			System.out.println(
-					"Response XML isn't valid. Skipping " + cityName + "(" + countryName + ")" + " addition to DB.");
-			}
-		}
+	private static void PrintProgress(long rows, long first, long total, long elapsedNanos) {
+		double rate = (rows - first + 1) / (elapsedNanos / 1e9);
+		long left = (long) ((total - rows) / rate);
+		System.out.println(String.format("Read %d/%d rows (%.1f%%), %.1f rows/s, ETA %d:%02d:%02d", rows, total,
+				100.0 * rows / Math.max(total, 1), rate, left / 3600, left / 60 % 60, left % 60));
 	}
-	
+
 	/**
-	 * Downloads the from the specified URL
-	 * @param url
-	 * @return The XML string of Google API response
+	 * Downloads the city data. Fallback requests of rows which failed validation
+	 * are served first, so the rows already in flight can finish.
 	 */
-	private StringBuffer DownloadCityData(String url) {
-		StringBuffer content = new StringBuffer();
-		URL osm;
+	private void DownloadStage(Geocoder requests, BlockingQueue<ImportTask> downloadQueue,
+			BlockingQueue<ImportTask> fallbackQueue, BlockingQueue<ImportTask> parseQueue) {
 		try {
-			osm = new URL(url.replace(" ", "%20"));
-			HttpURLConnection connection = (HttpURLConnection) osm.openConnection();
-			connection.getInputStream();
-			BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF8"));
-			String inputLine;
-			while ((inputLine = in.readLine()) != null) {
-				content.append(inputLine + "\n");
+			while (true) {
+				ImportTask task = fallbackQueue.poll();
+				if (task == null) {
+					task = downloadQueue.poll(50, TimeUnit.MILLISECONDS);
+					if (task == null) {
+						continue;
+					}
+				}
+				String countryName = task.fallback ? null : task.countryName;
+				try {
+					task.content = requests.geocode(task.cityName, countryName);
+				} catch (IOException e) {
+					System.out.println("Error while downloading City data of [" + task.cityName + ";"
+							+ (countryName == null ? "" : countryName) + "]: " + e);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+				if (task.content == null) {
+					// Not an invalid response, so the row isn't journaled as one
+					task.failed = true;
+					failedRows.incrementAndGet();
+					ROWS_FAILED.increment();
+					task.content = new byte[0];
+				}
+				parseQueue.put(task);
 			}
-			in.close();
-			connection.disconnect();
-		} catch (IOException e) {
-			e.printStackTrace();
-			System.out.println("Error while downloading City data");
+		} catch (InterruptedException e) {
+			// The pipeline is shut down
 		}
-		return content;
 	}
 
 	/**
-	 * Validates the XML for fields required for City object creation
-	 * 
-	 * @param xml
-	 * @param cityName
-	 * @param countryName
-	 * @return XML is valid if true, not valid if false
+	 * Parses the downloaded XML in a single pass, which also checks its structure.
+	 * Invalid responses of the request with the country are downloaded again
+	 * with the city name only. The rows which stay invalid are journaled, unless
+	 * one of their requests failed.
 	 */
-	private boolean ValidateCityXML(StringBuffer xml, String cityName, String countryName) {
-		Source streamSource = new StreamSource(new StringReader(xml.toString()));
-
+	private void ParseStage(BlockingQueue<ImportTask> parseQueue, BlockingQueue<ImportTask> fallbackQueue,
+			BlockingQueue<ImportTask> persistQueue) {
 		try {
-			SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-			Schema schema = schemaFactory.newSchema(xsdSchema);
-			Validator validator = schema.newValidator();
-			validator.validate(streamSource);
-		} catch (SAXException e) {
-			System.out.println(cityName + "(" + countryName + ")" + "XML response is not valid. Reason:" + e);
-			return false;
-		} catch (IOException e) {
-			e.printStackTrace();
-			return false;
+			while (true) {
+				ImportTask task = parseQueue.take();
+				City city = null;
+				boolean valid = false;
+				long start = PARSE_TIME.start();
+				try {
+					city = responseParser.parse(new ByteArrayInputStream(task.content), task.cityName,
+							task.countryName);
+					valid = true;
+				} catch (XMLStreamException e) {
+					System.out.println(task.cityName + "(" + task.countryName + ")"
+							+ "XML response is not valid. Reason:" + e.getMessage());
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+					System.out.println("Error while parsing the XML data");
+				}
+				PARSE_TIME.stop(start);
+				task.content = null;
+				if (city == null) {
+					RESPONSES_INVALID.increment();
+				}
+
+				if (city != null) {
+					task.city = city;
+					if (journal != null) {
+						journal.geocoded(task.row, task.offset, city);
+					}
+					persistQueue.put(task);
+				} else if (!valid && !task.fallback) {
+					System.out.println("Response XML isn't valid. Trying URL with the city name only.");
+					task.fallback = true;
+					fallbackQueue.add(task);
+				} else {
+					System.out.println("Response XML isn't valid. Skipping " + task.cityName + "(" + task.countryName
+							+ ")" + " addition to DB.");
+					if (journal != null && !task.failed) {
+						journal.invalid(task.row, task.offset);
+					}
+					RowFinished();
+				}
+			}
+		} catch (InterruptedException e) {
+			// The pipeline is shut down
 		}
-		return true;
 	}
 
 	/**
-	 * Parse the XMLdata to create a City object and add it to the city list
-	 * 
-	 * @param xml
-	 * @param cityName
-	 * @param countryName
+	 * Collects the parsed cities into the city list and saves them to the database
+	 * whenever a chunk is full. The city list and the entity manager are only used
+	 * by this stage until it receives the end of input marker.
 	 */
-	private void ParseCityXML(StringBuffer xml, String cityName, String countryName) {
+	private void PersistStage(BlockingQueue<ImportTask> persistQueue) {
 		try {
-			StringReader reader = new StringReader(xml.toString());
-			InputSource is = new InputSource(reader);
-
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			DocumentBuilder db = dbf.newDocumentBuilder();
-			Document doc = db.parse(is);
-
-			XPathFactory xpathfactory = XPathFactory.newInstance();
-			XPath xpath = xpathfactory.newXPath();
-			XPathExpression expr;
-
-			String uuid;
-			Location location;
-			Bounds cityBounds;
-			Coordinates coordNE, coordSW;
-			double latitude, longitude;
-
-			expr = xpath.compile("//result/place_id/text()");
-			uuid = GetXMLNodeData(doc, expr).toString();
-
-			expr = xpath.compile("//result/geometry/location/lat/text()");
-			latitude = Double.parseDouble(GetXMLNodeData(doc, expr));
-
-			expr = xpath.compile("//result/geometry/location/lng/text()");
-			longitude = Double.parseDouble(GetXMLNodeData(doc, expr));
-
-			location = new Location(latitude, longitude);
-
-			String boundsStr;
-			// City XML sometimes has Viewport instead of Bounds so it's important to
-			// account for that
-			expr = xpath.compile("//result/geometry/bounds");
-			if (GetXMLNodeExists(doc, expr)) {
-				boundsStr = "bounds";
-			} else {
-				boundsStr = "viewport";
+			ImportTask task;
+			while ((task = persistQueue.take()) != END_OF_INPUT) {
+				cityList.add(task.city);
+				persistTasks.add(task);
+				RowFinished();
+				if (cityList.size() >= batchSize) {
+					int chunk = cityList.size();
+					try {
+						PersistData();
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+						System.out.println("Error while saving a chunk of " + chunk + " cities to the database.");
+						failedRows.addAndGet(chunk);
+						ROWS_FAILED.add(chunk);
+						if (entityManager.getTransaction().isActive()) {
+							entityManager.getTransaction().rollback();
+						}
+						cityList.clear();
+						persistTasks.clear();
+						entityManager.clear();
+					}
+				}
 			}
-
-			expr = xpath.compile("//result/geometry/" + boundsStr + "/northeast/lat/text()");
-			latitude = Double.parseDouble(GetXMLNodeData(doc, expr));
-
-			expr = xpath.compile("//result/geometry/" + boundsStr + "/northeast/lng/text()");
-			longitude = Double.parseDouble(GetXMLNodeData(doc, expr));
-
-			coordNE = new Coordinates(latitude, longitude);
-
-			expr = xpath.compile("//result/geometry/" + boundsStr + "/southwest/lat/text()");
-			latitude = Double.parseDouble(GetXMLNodeData(doc, expr));
-
-			expr = xpath.compile("//result/geometry/" + boundsStr + "/southwest/lng/text()");
-			longitude = Double.parseDouble(GetXMLNodeData(doc, expr));
-
-			coordSW = new Coordinates(latitude, longitude);
-
-			cityBounds = new Bounds(coordNE, coordSW);
-
-			City city = new City(uuid, cityName, countryName, cityBounds, location);
-			cityList.add(city);
-		} catch (Exception e) {
-			e.printStackTrace();
-			System.out.println("Error while parsing the XML data");
+		} catch (InterruptedException e) {
+			// The pipeline is shut down
 		}
 	}
 
-	private String GetXMLNodeData(Document doc, XPathExpression xpath) {
-		Object result = null;
-		try {
-			result = xpath.evaluate(doc, XPathConstants.NODE);
-		} catch (XPathExpressionException e) {
-			System.out.println("Error evaluating xpath:" + xpath.toString());
-			e.printStackTrace();
-		}
-		Node node = (Node) result;
-		if (node != null) {
-			return node.getNodeValue();
-		} else {
-			return null;
+	private void AwaitPendingRows() throws InterruptedException {
+		synchronized (pendingLock) {
+			while (pendingRows.get() > 0) {
+				pendingLock.wait();
+			}
 		}
 	}
 
-	private boolean GetXMLNodeExists(Document doc, XPathExpression xpath) {
-		Object result = null;
-		try {
-			result = xpath.evaluate(doc, XPathConstants.NODE);
-		} catch (XPathExpressionException e) {
-			System.out.println("Error evaluating xpath:" + xpath.toString());
-			e.printStackTrace();
+	private void RowFinished() {
+		if (pendingRows.decrementAndGet() == 0) {
+			synchronized (pendingLock) {
+				pendingLock.notifyAll();
+			}
 		}
-		Node node = (Node) result;
-		if (node != null) {
-			return true;
-		} else {
-			return false;
+	}
+
+	/**
+	 * Loads the name and country of every city in the database, so the existence
+	 * check of a CSV row is a hash lookup instead of a query. The keys are read
+	 * in a single query using the CITY(NAME, COUNTRY) index.
+	 */
+	private void LoadExistingRecords() {
+		String queryStr = "SELECT c.name, c.country FROM City c";
+		List<Object[]> rows = entityManager.createQuery(queryStr, Object[].class).getResultList();
+		existingRecords = new HashSet<>(rows.size() * 2);
+		for (Object[] row : rows) {
+			existingRecords.add(RecordKey((String) row[0], (String) row[1]));
 		}
 	}
 
+	private static String RecordKey(String cityName, String countryName) {
+		// The CSV separator can't be part of the names
+		return cityName + ";" + countryName;
+	}
+
 	/**
 	 * Check if a city with specified name and country already exists in the
 	 * database
@@ -300,29 +478,63 @@ public class CitiesDataImport {
 	 * @return
 	 */
 	private boolean RecordExistsInDB(String cityName, String countryName) {
-		String queryStr = "SELECT Count(c) FROM City c WHERE c.name = :cityName AND c.country = :countryName";
-		Query query = entityManager.createQuery(queryStr);
-		query.setParameter("cityName", cityName);
-		query.setParameter("countryName", countryName);
-		Long count = (Long) query.getSingleResult();
-		return ((count.equals(0L)) ? false : true);
+		return existingRecords.contains(RecordKey(cityName, countryName));
 	}
 
 	/**
-	 * Save the city data to the database using the city list
+	 * Save the city data to the database using the city list. The bounds of the
+	 * cities are added to the R*Tree index in the same transaction, unless the
+	 * index is turned off, and the first chunk brings the index in sync. The
+	 * persistence context is cleared afterwards, so the saved cities don't stay
+	 * in memory. The persist listener receives the chunk once it is committed,
+	 * and the rows of the chunk are journaled.
 	 */
 	public void PersistData() {
+		long start = PERSIST_TIME.start();
 		entityManager.getTransaction().begin();
 
 		for (City city : cityList) {
 			entityManager.persist(city);
 		}
+		entityManager.flush();
+		if (indexBounds) {
+			if (!boundsIndexSynchronized) {
+				CityBoundsIndex.synchronize(entityManager);
+				boundsIndexSynchronized = true;
+			}
+			for (City city : cityList) {
+				CityBoundsIndex.add(entityManager, city);
+			}
+		}
 
 		entityManager.getTransaction().commit();
+		PERSIST_TIME.stop(start);
+		CITIES_PERSISTED.add(cityList.size());
+		if (persistListener != null && !cityList.isEmpty()) {
+			persistListener.accept(new ArrayList<>(cityList));
+		}
+		if (journal != null && !persistTasks.isEmpty()) {
+			int[] rows = new int[persistTasks.size()];
+			long[] offsets = new long[rows.length];
+			for (int i = 0; i < rows.length; i++) {
+				rows[i] = persistTasks.get(i).row;
+				offsets[i] = persistTasks.get(i).offset;
+			}
+			journal.persisted(rows, offsets);
+		}
 		cityList.clear();
+		persistTasks.clear();
 		entityManager.clear();
 	}
 
+	/**
+	 * @return Number of rows or requests which failed with a temporary error
+	 *         during the import, 0 if the import is complete
+	 */
+	public int getFailedRows() {
+		return failedRows.get();
+	}
+
 	public String getKey() {
 		return key;
 	}
@@ -330,4 +542,110 @@ public class CitiesDataImport {
 	public void setKey(String key) {
 		this.key = key;
 	}
+
+	public Geocoder getGeocoder() {
+		return geocoder;
+	}
+
+	/**
+	 * @param geocoder Geocoding service, null for the Google API at the base URL
+	 *                 with the key
+	 */
+	public void setGeocoder(Geocoder geocoder) {
+		this.geocoder = geocoder;
+	}
+
+	public String getBaseURL() {
+		return baseURL;
+	}
+
+	/**
+	 * @param baseURL Geocoding service URL, which can point to a local stub server
+	 */
+	public void setBaseURL(String baseURL) {
+		this.baseURL = baseURL;
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * @param concurrency Maximum number of concurrent download requests
+	 */
+	public void setConcurrency(int concurrency) {
+		this.concurrency = concurrency;
+		// Keep-alive connections cached per destination, read by the JDK on first use
+		System.setProperty("http.maxConnections", Integer.toString(concurrency));
+	}
+
+	public GeocodeCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @param cache Response cache, null to always download
+	 */
+	public void setCache(GeocodeCache cache) {
+		this.cache = cache;
+	}
+
+	public boolean isOffline() {
+		return offline;
+	}
+
+	/**
+	 * @param offline Only replay the responses from the cache, without any network
+	 *                requests
+	 */
+	public void setOffline(boolean offline) {
+		this.offline = offline;
+	}
+
+	public ImportJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * @param journal Journal of the imported CSV, which may resume an interrupted
+	 *                import, null for none
+	 */
+	public void setJournal(ImportJournal journal) {
+		this.journal = journal;
+	}
+
+	public Consumer<List<City>> getPersistListener() {
+		return persistListener;
+	}
+
+	/**
+	 * @param persistListener Called on the persist stage thread with the cities of
+	 *                        every committed chunk, null for none
+	 */
+	public void setPersistListener(Consumer<List<City>> persistListener) {
+		this.persistListener = persistListener;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @param batchSize Number of cities saved to the database in one transaction
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public boolean isIndexBounds() {
+		return indexBounds;
+	}
+
+	/**
+	 * @param indexBounds Add the bounds to the R*Tree index during the import, as
+	 *                    in {@link GazetteerImport#setIndexBounds(boolean)}
+	 */
+	public void setIndexBounds(boolean indexBounds) {
+		this.indexBounds = indexBounds;
+	}
 }
@@ -2,7 +2,12 @@ package citiesDistance;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The main class responsible for running the initial City data import into the
@@ -14,18 +19,80 @@ import java.util.Scanner;
  */
 public class CitiesDistance {
 	private final static String DEFAULT_CSV = "input/500_europe_cities.csv";
+	static final String STARTUP_FAST = "fast";
+	static final String STARTUP_FULL = "full";
+	static final String MODE_CONSOLE = "console";
+	static final String MODE_SERVER = "server";
+	static final String IMPORT_GEOCODER = "geocoder";
+	static final String IMPORT_GAZETTEER = "gazetteer";
 	private final static Config config = new Config();
 	static Scanner in = new Scanner(System.in);
 
 	public static void main(String[] args) {
-		if (config.getKey().equals("")) {
+		// Only the geocoding service needs the key
+		if (config.getKey().equals("") && !config.isOffline()
+				&& !config.getImportSource().equals(IMPORT_GAZETTEER)) {
 			System.out.println("Key parameter in the configuration file (config/config.cfg) isn't present. Please"
 					+ " provide a valid Google API key.");
 			System.exit(3);
 		}
-		String csvFilename = InputConfigUI();
-		DataImport(csvFilename);
-		ConsoleUI();
+		CitiesPersistence.setDatabaseURL(config.getDatabaseURL());
+		Metrics.setEnabled(config.isMetricsEnabled());
+		if (config.isMetricsEnabled()) {
+			Metrics.registerMBeans();
+		}
+		boolean server = config.getMode().equals(MODE_SERVER);
+		// The server runs unattended, so it imports the configured file
+		String csvFilename = server ? config.getInputFile(DEFAULT_CSV) : InputConfigUI();
+		if (server) {
+			// The server answers from the data it has while the import runs, and
+			// the in-memory engines pick up every imported chunk
+			ServerUI();
+			SnapshotExport(DataImport(csvFilename));
+		} else {
+			SnapshotExport(DataImport(csvFilename));
+			ConsoleUI();
+		}
+	}
+
+	/**
+	 * Configures the distance calculator with the query parameters of the
+	 * configuration file
+	 * 
+	 * @return The configured calculator
+	 */
+	private static DistanceCalculator ConfigureCalculator() {
+		DistanceCalculator calc = DistanceCalculator.getInstance();
+		calc.setLimit(config.getLimit());
+		calc.setSearchRadius(config.getSearchRadius());
+		calc.setEngineName(config.getEngine());
+		calc.setResultCacheSize(config.getResultCacheSize());
+		calc.setResultCachePrecision(config.getResultCachePrecision());
+		if (!config.getSnapshotFile().isEmpty()) {
+			calc.setSnapshotPath(Paths.get(config.getSnapshotFile()));
+		}
+		return calc;
+	}
+
+	/**
+	 * Starts the HTTP query server, which keeps running until the process is
+	 * stopped
+	 */
+	private static void ServerUI() {
+		DistanceCalculator calc = ConfigureCalculator();
+		try {
+			CitiesServer server = new CitiesServer(calc, config.getServerPort(), config.getServerThreads());
+			if (config.isMetricsEnabled() && config.isMetricsEndpoint()) {
+				server.addMetricsEndpoint();
+			}
+			server.start();
+			System.out.println("Listening on port " + server.getPort() + " (GET /nearest?lat=..&lon=.. and"
+					+ " GET /inside?lat=..&lon=..)");
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.out.println("Error while starting the query server.");
+			System.exit(4);
+		}
 	}
 
 	/**
@@ -37,9 +104,7 @@ public class CitiesDistance {
 		Double longitude;
 		Double latitude;
 
-		DistanceCalculator calc = DistanceCalculator.getInstance();
-		calc.setLimit(config.getLimit());
-		calc.setSearchRadius(config.getSearchRadius());
+		DistanceCalculator calc = ConfigureCalculator();
 
 		while (input.toLowerCase() != "q") {
 			System.out.println("Please enter the coordinates of the point (q to quit):");
@@ -121,12 +186,61 @@ public class CitiesDistance {
 	}
 
 	/**
-	 * Imports the City data using the specified CSV file
+	 * Imports the City data using the specified CSV file. In the fast startup mode
+	 * the import is skipped if the file is unchanged since its last complete
+	 * import.
 	 * 
 	 * @param csvFilename Filename of the city CSV file
+	 * @return If the import ran
 	 */
-	private static void DataImport(String csvFilename) {
+	private static boolean DataImport(String csvFilename) {
+		Path csv = Paths.get(csvFilename);
+		String checksum = null;
+		try {
+			checksum = ImportChecksum.compute(csv);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.out.println("Error while calculating the checksum of " + csvFilename);
+		}
+		if (checksum != null && config.getStartupMode().equals(STARTUP_FAST)
+				&& ImportChecksum.isImported(csv, checksum)) {
+			System.out.println(csvFilename + " hasn't changed since the last import. Skipping the import.");
+			return false;
+		}
+
+		if (config.getImportSource().equals(IMPORT_GAZETTEER)) {
+			GazetteerImport(csvFilename);
+			if (checksum != null) {
+				ImportChecksum.record(csv, checksum);
+			}
+			return true;
+		}
+
 		CitiesDataImport cdi = new CitiesDataImport(config.getKey());
+		cdi.setBaseURL(config.getGeocodeURL());
+		cdi.setConcurrency(config.getImportConcurrency());
+		cdi.setOffline(config.isOffline());
+		cdi.setBatchSize(config.getBatchSize());
+		cdi.setIndexBounds(config.getEngine().equals(DistanceCalculator.ENGINE_JPQL));
+		cdi.setPersistListener(DistanceCalculator.getInstance()::addImportedCities);
+		if (!config.getGeocodeCacheDir().isEmpty()) {
+			try {
+				cdi.setCache(new GeocodeCache(Paths.get(config.getGeocodeCacheDir()),
+						TimeUnit.DAYS.toMillis(config.getGeocodeCacheTtlDays()),
+						config.getGeocodeCacheMaxMB() * 1024 * 1024));
+			} catch (IOException e) {
+				e.printStackTrace();
+				System.out.println("Error while opening the geocode cache. Continuing without it.");
+			}
+		}
+		if (!config.getImportJournal().isEmpty() && checksum != null) {
+			try {
+				cdi.setJournal(ImportJournal.open(Paths.get(config.getImportJournal()), checksum));
+			} catch (IOException e) {
+				e.printStackTrace();
+				System.out.println("Error while opening the import journal. Continuing without it.");
+			}
+		}
 		try {
 			cdi.ReadCSV(csvFilename);
 		} catch (IOException e) {
@@ -142,6 +256,76 @@ public class CitiesDistance {
 			System.out.println("Error while saving the City data to the database.");
 			System.exit(2);
 		}
+
+		if (cdi.getFailedRows() > 0) {
+			System.out.println(cdi.getFailedRows() + " rows couldn't be imported. " + csvFilename
+					+ " will be imported again on the next start.");
+		} else if (checksum != null) {
+			ImportChecksum.record(csv, checksum);
+		}
+		CloseJournal(cdi);
+		return true;
 	}
 
+	/**
+	 * Imports a local gazetteer dump with bulk inserts, without the geocoding
+	 * service
+	 * 
+	 * @param filename Filename of the tab separated GeoNames dump
+	 */
+	private static void GazetteerImport(String filename) {
+		GazetteerImport gazetteer = new GazetteerImport();
+		gazetteer.setPersistListener(DistanceCalculator.getInstance()::addImportedCities);
+		gazetteer.setIndexBounds(config.getEngine().equals(DistanceCalculator.ENGINE_JPQL));
+		long start = System.nanoTime();
+		try {
+			gazetteer.importFile(Paths.get(filename));
+		} catch (IOException | SQLException e) {
+			e.printStackTrace();
+			System.out.println("Error while importing the gazetteer " + filename);
+			System.exit(1);
+		}
+		System.out.println(String.format("Imported %d cities from %s in %.1f s, %d rows skipped.",
+				gazetteer.getImportedCities(), filename, (System.nanoTime() - start) / 1e9,
+				gazetteer.getSkippedRows()));
+	}
+
+	/**
+	 * Deletes the journal of a complete import, otherwise keeps it, so the next
+	 * import only retries the failed rows
+	 */
+	private static void CloseJournal(CitiesDataImport cdi) {
+		if (cdi.getJournal() == null) {
+			return;
+		}
+		try {
+			if (cdi.getFailedRows() > 0) {
+				cdi.getJournal().close();
+			} else {
+				cdi.getJournal().delete();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.out.println("Error while closing the import journal.");
+		}
+	}
+
+	/**
+	 * Exports the imported cities to the snapshot file, if it is configured, so
+	 * the in-memory engines can start without the database
+	 * 
+	 * @param imported If the import ran, otherwise an existing snapshot is kept
+	 */
+	private static void SnapshotExport(boolean imported) {
+		if (config.getSnapshotFile().isEmpty()
+				|| (!imported && Files.exists(Paths.get(config.getSnapshotFile())))) {
+			return;
+		}
+		try {
+			DistanceCalculator.getInstance().exportSnapshot(Paths.get(config.getSnapshotFile()));
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.out.println("Error while exporting the city snapshot. The cities will be loaded from the database.");
+		}
+	}
 }
@@ -0,0 +1,84 @@
+package citiesDistance;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Collections;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+/**
+ * Holds the single entity manager factory shared by the import and the query
+ * engines, so the persistence unit is bootstrapped once per process. The
+ * database URL is known before the factory exists, so the schema migration and
+ * the maintenance tasks can use plain JDBC without starting EclipseLink.
+ *
+ * @author Rolandas
+ *
+ */
+
+public final class CitiesPersistence {
+	static final String PERSISTENCE_UNIT = "CitiesDistance";
+	static final String DEFAULT_DATABASE_URL = "jdbc:sqlite:db/CitiesDataDB.db";
+
+	private static String databaseURL = DEFAULT_DATABASE_URL;
+	private static EntityManagerFactory factory;
+	private static SqlStatementCounter statementCounter;
+
+	private CitiesPersistence() {
+	}
+
+	/**
+	 * Creates the factory on first use. The database is migrated from a former
+	 * schema first, then deploying the persistence unit creates the missing tables
+	 * and columns.
+	 *
+	 * @return The shared entity manager factory
+	 */
+	public static synchronized EntityManagerFactory getFactory() {
+		if (factory == null) {
+			CitySchemaMigration.migrate();
+			EntityManagerFactory created = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT,
+					Collections.singletonMap("javax.persistence.jdbc.url", databaseURL));
+			// Installing the profiler deploys the persistence unit
+			statementCounter = SqlStatementCounter.install(created);
+			factory = created;
+		}
+		return factory;
+	}
+
+	/**
+	 * @return Counter of the SQL statements sent through the shared factory
+	 */
+	public static synchronized SqlStatementCounter getStatementCounter() {
+		getFactory();
+		return statementCounter;
+	}
+
+	public static synchronized String getDatabaseURL() {
+		return databaseURL;
+	}
+
+	/**
+	 * @param databaseURL JDBC URL of the SQLite database, must be set before the
+	 *                    factory is created
+	 */
+	public static synchronized void setDatabaseURL(String databaseURL) {
+		if (factory != null) {
+			throw new IllegalStateException("The persistence unit is already started");
+		}
+		CitiesPersistence.databaseURL = databaseURL;
+	}
+
+	/**
+	 * Opens a plain JDBC connection to the database. It is used for the
+	 * maintenance tasks which run before or without the persistence unit.
+	 *
+	 * @return A new connection, which must be closed by the caller
+	 * @throws SQLException
+	 */
+	static Connection openConnection() throws SQLException {
+		return DriverManager.getConnection(getDatabaseURL());
+	}
+}
@@ -0,0 +1,274 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP lookup service on top of the configured query engine, using the HTTP
+ * server embedded in the JDK. It provides two endpoints, both answering with
+ * JSON:
+ *
+ * <pre>
+ * GET /nearest?lat=..&amp;lon=..[&amp;limit=..][&amp;radius=..]  closest cities by the distance from their bounds
+ * GET /inside?lat=..&amp;lon=..                           cities whose bounds contain the point, smallest first
+ * GET /metrics                                        {@link Metrics} in the Prometheus text format, if added
+ * </pre>
+ *
+ * The requests are handled by a fixed pool of worker threads. Every worker has
+ * its own result buffer and, unless the engine can be shared, its own query
+ * engine, so no state is shared between concurrent requests. The inside
+ * lookups are answered by the same engine without a distance query.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class CitiesServer {
+	static final int DEFAULT_PORT = 8080;
+	// Pending connections queued by the operating system
+	private static final int BACKLOG = 4096;
+	private static final int MAX_LIMIT = 1000;
+	private static final int MAX_RADIUS = 20038; // Half of the Earth's circumference in km
+
+	static {
+		// The JDK server writes the response headers and body separately, and with
+		// Nagle's algorithm every response on a kept-alive connection waits for the
+		// delayed ACK of the client. Read by the JDK when the first server starts.
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final DistanceCalculator calculator;
+	private final HttpServer server;
+	private final ExecutorService workers;
+	private final ThreadLocal<DistanceQueryEngine> engines;
+	private final ThreadLocal<QueryResult> results = ThreadLocal.withInitial(QueryResult::new);
+
+	private static final Metrics.Counter REQUESTS = Metrics.counter("server.requests");
+	private static final Metrics.Counter CLIENT_ERRORS = Metrics.counter("server.errors.client");
+	private static final Metrics.Counter SERVER_ERRORS = Metrics.counter("server.errors.server");
+
+	/**
+	 * @param calculator Provides the query engine, search radius and limit
+	 * @param port       Port to listen on, 0 for any free port
+	 * @param threads    Number of worker threads
+	 * @throws IOException If the port can't be bound
+	 */
+	public CitiesServer(DistanceCalculator calculator, int port, int threads) throws IOException {
+		this.calculator = calculator;
+		engines = ThreadLocal.withInitial(calculator::createThreadEngine);
+
+		server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+		server.createContext("/nearest", exchange -> handle(exchange, false));
+		server.createContext("/inside", exchange -> handle(exchange, true));
+		workers = Executors.newFixedThreadPool(threads);
+		server.setExecutor(workers);
+	}
+
+	/**
+	 * Adds the GET /metrics endpoint, which answers with every metric in the
+	 * plain text format scraped by Prometheus. Must be called before the server
+	 * is started.
+	 */
+	public void addMetricsEndpoint() {
+		server.createContext("/metrics", exchange -> {
+			try {
+				if (!"GET".equals(exchange.getRequestMethod())) {
+					send(exchange, 405, "text/plain; charset=utf-8", "Only GET requests are supported\n");
+					return;
+				}
+				send(exchange, 200, "text/plain; version=0.0.4; charset=utf-8", Metrics.toText());
+			} finally {
+				exchange.close();
+			}
+		});
+	}
+
+	/**
+	 * Prepares the query engine, so the first requests don't wait for the city
+	 * data to load, and starts accepting requests
+	 */
+	public void start() {
+		calculator.createThreadEngine();
+		server.start();
+	}
+
+	/**
+	 * Stops accepting requests and waits for the running ones to finish
+	 *
+	 * @param delaySeconds Maximum time to wait for the running requests
+	 */
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+		workers.shutdown();
+		try {
+			workers.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange, boolean inside) throws IOException {
+		REQUESTS.increment();
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				CLIENT_ERRORS.increment();
+				send(exchange, 405, error("Only GET requests are supported"));
+				return;
+			}
+			Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+			double latitude = getCoordinate(parameters, "lat", 90);
+			double longitude = getCoordinate(parameters, "lon", 180);
+			QueryResult result = results.get();
+			DistanceQueryEngine engine = engines.get();
+			if (inside) {
+				long start = DistanceCalculator.CONTAINING_TIME.start();
+				engine.findContaining(longitude, latitude, result);
+				DistanceCalculator.CONTAINING_TIME.stop(start);
+				send(exchange, 200, toJson(result));
+				return;
+			}
+			int limit = getInt(parameters, "limit", calculator.getLimit(), 1, MAX_LIMIT);
+			int radius = getInt(parameters, "radius", calculator.getSearchRadius(), 0, MAX_RADIUS);
+
+			long start = DistanceCalculator.QUERY_TIME.start();
+			engine.findClosest(longitude, latitude, radius, limit, result);
+			DistanceCalculator.QUERY_TIME.stop(start);
+			send(exchange, 200, toJson(result));
+		} catch (IllegalArgumentException e) {
+			CLIENT_ERRORS.increment();
+			send(exchange, 400, error(e.getMessage()));
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			SERVER_ERRORS.increment();
+			send(exchange, 500, error("Error while searching for the cities"));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+		Map<String, String> parameters = new HashMap<>();
+		if (query == null) {
+			return parameters;
+		}
+		for (String pair : query.split("&")) {
+			int separator = pair.indexOf('=');
+			if (separator > 0) {
+				parameters.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+						URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+			}
+		}
+		return parameters;
+	}
+
+	private static double getCoordinate(Map<String, String> parameters, String name, double maximum) {
+		String value = parameters.get(name);
+		if (value == null) {
+			throw new IllegalArgumentException("Parameter '" + name + "' is required");
+		}
+		double coordinate;
+		try {
+			coordinate = Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Parameter '" + name + "' must be a number");
+		}
+		if (!(coordinate >= -maximum && coordinate <= maximum)) {
+			throw new IllegalArgumentException("Parameter '" + name + "' must be between -" + (int) maximum
+					+ " and " + (int) maximum);
+		}
+		return coordinate;
+	}
+
+	private static int getInt(Map<String, String> parameters, String name, int defaultValue, int minimum,
+			int maximum) {
+		String value = parameters.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			int number = Integer.parseInt(value);
+			if (number >= minimum && number <= maximum) {
+				return number;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below
+		}
+		throw new IllegalArgumentException(
+				"Parameter '" + name + "' must be a whole number between " + minimum + " and " + maximum);
+	}
+
+	private static String toJson(QueryResult result) {
+		StringBuilder json = new StringBuilder(64 + result.size() * 96);
+		json.append("{\"results\":[");
+		for (int i = 0; i < result.size(); i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append("{\"id\":").append(result.getCityId(i));
+			json.append(",\"name\":");
+			appendString(json, result.getName(i));
+			json.append(",\"country\":");
+			appendString(json, result.getCountry(i));
+			json.append(",\"distance\":").append(result.getDistance(i));
+			json.append(",\"inside\":").append(result.isInsideBounds(i)).append('}');
+		}
+		return json.append("]}").toString();
+	}
+
+	private static String error(String message) {
+		StringBuilder json = new StringBuilder("{\"error\":");
+		appendString(json, message);
+		return json.append('}').toString();
+	}
+
+	private static void appendString(StringBuilder json, String value) {
+		if (value == null) {
+			json.append("null");
+			return;
+		}
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		send(exchange, status, "application/json; charset=utf-8", body);
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, String body)
+			throws IOException {
+		byte[] content = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, content.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(content);
+		}
+	}
+}
@@ -1,33 +1,60 @@
 package citiesDistance;
 
-import javax.persistence.CascadeType;
+import javax.persistence.Embedded;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
-import javax.persistence.OneToOne;
+import javax.persistence.Index;
+import javax.persistence.NamedNativeQueries;
+import javax.persistence.NamedNativeQuery;
+import javax.persistence.NamedQuery;
+import javax.persistence.QueryHint;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
+
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
 
 /**
- * Represents the City entity with its location, bounds, name and country
+ * Represents the City entity with its location, bounds, name and country. The
+ * location and bounds are embedded, so the whole city is stored in one row of
+ * the CITY table.
  * 
  * @author Rolandas
  */
 
 @Entity
-@Table
+@Table(indexes = @Index(name = City.NAME_COUNTRY_INDEX, columnList = "NAME, COUNTRY"))
+// Ids are preallocated in large blocks, so the SEQUENCE table is rarely
+// updated during a bulk import.
+@TableGenerator(name = City.ID_GENERATOR, table = "SEQUENCE", pkColumnName = "SEQ_NAME",
+		valueColumnName = "SEQ_COUNT", pkColumnValue = "SEQ_GEN", allocationSize = 1000)
+// The queries of the query engines are parsed once at deployment. Their
+// results are only read, so they aren't registered for change tracking.
+@NamedQuery(name = CityDataset.ALL_CITIES_QUERY, query = "SELECT c FROM City c ORDER BY c.id",
+		hints = @QueryHint(name = QueryHints.READ_ONLY, value = HintValues.TRUE))
+@NamedNativeQueries({
+		@NamedNativeQuery(name = JpqlQueryEngine.CLOSEST_CITIES_QUERY, query = JpqlQueryEngine.DISTANCE_QUERY,
+				resultClass = City.class, hints = @QueryHint(name = QueryHints.READ_ONLY, value = HintValues.TRUE)),
+		@NamedNativeQuery(name = JpqlQueryEngine.CONTAINING_CITIES_QUERY, query = JpqlQueryEngine.CONTAINING_QUERY,
+				resultClass = City.class, hints = @QueryHint(name = QueryHints.READ_ONLY, value = HintValues.TRUE)) })
 public class City {
+	static final String NAME_COUNTRY_INDEX = "IDX_CITY_NAME_COUNTRY";
+	static final String CREATE_NAME_COUNTRY_INDEX = "CREATE INDEX IF NOT EXISTS " + NAME_COUNTRY_INDEX
+			+ " ON CITY (NAME, COUNTRY)";
+	static final String ID_GENERATOR = "SEQ_GEN";
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(strategy = GenerationType.TABLE, generator = City.ID_GENERATOR)
 	private int id;
 	private String placeId;
 	private String name;
 	private String country;
 
-	@OneToOne(mappedBy = "city", cascade = CascadeType.PERSIST)
+	@Embedded
 	private Bounds bounds;
-	@OneToOne(mappedBy = "city", cascade = CascadeType.PERSIST)
+	@Embedded
 	private Location location;
 
 	public Location getLocation() {
@@ -56,9 +83,7 @@ public class City {
 		this.placeId = placeId;
 		this.setName(name);
 		this.setCountry(country);
-		bounds.setCity(this);
 		this.setBounds(bounds);
-		location.setCity(this);
 		this.setLocation(location);
 	}
 
@@ -66,6 +91,17 @@ public class City {
 		super();
 	}
 
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @param id Id allocated outside of the persistence unit, by the bulk import
+	 */
+	void setId(int id) {
+		this.id = id;
+	}
+
 	public String getPlaceId() {
 		return placeId;
 	}
@@ -95,7 +131,6 @@ public class City {
 	}
 
 	public void setBounds(Bounds bounds) {
-		bounds.setCity(this);
 		this.bounds = bounds;
 	}
 
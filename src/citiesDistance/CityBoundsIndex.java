@@ -0,0 +1,63 @@
+package citiesDistance;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Maintains the SQLite R*Tree virtual table with the bounds of every city. The
+ * table is used by {@link JpqlQueryEngine} to narrow the distance query down to
+ * the cities near the searched point before any trigonometry is calculated.
+ * All methods must be called inside an active transaction.
+ *
+ * @author Rolandas
+ *
+ */
+
+public final class CityBoundsIndex {
+	static final String TABLE = "CITY_RTREE";
+	static final String CREATE_TABLE = "CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE
+			+ " USING rtree(ID, MIN_LON, MAX_LON, MIN_LAT, MAX_LAT)";
+	// Index entries of the cities
+	static final String SELECT_BOUNDS = "SELECT ID, MIN(SW_LONGITUDE, NE_LONGITUDE), MAX(SW_LONGITUDE, NE_LONGITUDE),"
+			+ " MIN(SW_LATITUDE, NE_LATITUDE), MAX(SW_LATITUDE, NE_LATITUDE) FROM CITY";
+
+	private CityBoundsIndex() {
+	}
+
+	/**
+	 * Creates the R*Tree table if it doesn't exist yet and brings it in sync with
+	 * the bounds columns of the CITY table. Entries of deleted cities are
+	 * removed and cities which aren't indexed yet are added.
+	 *
+	 * @param entityManager
+	 */
+	public static void synchronize(EntityManager entityManager) {
+		entityManager.createNativeQuery(CREATE_TABLE).executeUpdate();
+
+		entityManager.createNativeQuery("DELETE FROM " + TABLE + " WHERE ID NOT IN (SELECT ID FROM CITY)")
+				.executeUpdate();
+		entityManager.createNativeQuery("INSERT INTO " + TABLE + " " + SELECT_BOUNDS
+				+ " WHERE ID NOT IN (SELECT ID FROM " + TABLE + ")").executeUpdate();
+	}
+
+	/**
+	 * Adds the bounds of a persisted city to the index. The city must already be
+	 * flushed, so it has its id assigned. The corners are ordered as in
+	 * {@link #SELECT_BOUNDS}, since the bounds of a city crossing the
+	 * antimeridian have a south-west longitude above the north-east one, and the
+	 * R*Tree rejects a minimum above the maximum.
+	 *
+	 * @param entityManager
+	 * @param city
+	 */
+	public static void add(EntityManager entityManager, City city) {
+		Coordinates southWest = city.getBounds().getSouthWest();
+		Coordinates northEast = city.getBounds().getNorthEast();
+		entityManager.createNativeQuery("INSERT OR REPLACE INTO " + TABLE + " VALUES (?1, ?2, ?3, ?4, ?5)")
+				.setParameter(1, city.getId())
+				.setParameter(2, Math.min(southWest.getLongitude(), northEast.getLongitude()))
+				.setParameter(3, Math.max(southWest.getLongitude(), northEast.getLongitude()))
+				.setParameter(4, Math.min(southWest.getLatitude(), northEast.getLatitude()))
+				.setParameter(5, Math.max(southWest.getLatitude(), northEast.getLatitude()))
+				.executeUpdate();
+	}
+}
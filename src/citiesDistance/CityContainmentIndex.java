@@ -0,0 +1,217 @@
+package citiesDistance;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the city bounds, which answers which cities contain a point
+ * without a distance query. Every city is listed in the grid cells its bounds
+ * overlap, so a lookup only checks the few cities of the cell of the point. The
+ * cells are kept in an open addressing hash table, since most of the grid is
+ * empty, and the cell size is the median extent of the bounds, so a typical
+ * city is listed in up to four cells. Cities whose bounds would span too many
+ * cells are checked on every lookup instead.
+ *
+ * A point is inside the bounds when {@link GeoUtils#distanceFromBounds} is 0
+ * for it. The cities of a cell are ordered by the area of their bounds, so of
+ * overlapping bounds the smallest, most specific city comes first. The index
+ * is immutable and can be shared between threads.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class CityContainmentIndex {
+	static final int MAX_CELLS_PER_CITY = 1024;
+	private static final double MIN_CELL_SIZE = 0.01;
+	private static final double MAX_CELL_SIZE = 10;
+
+	private final CityDataset cities;
+	private final double cellSize;
+	private final int latCells, lonCells;
+	// City indices by the area of their bounds, the cells refer to the positions
+	private final int[] byArea;
+	// Cell number + 1 of every slot, 0 for free slots
+	private final long[] slotCells;
+	// Range of the cell in the ranks
+	private final int[] slotStart, slotEnd;
+	private final int[] ranks;
+	// Ranks of the cities which span more than MAX_CELLS_PER_CITY cells
+	private final int[] large;
+
+	CityContainmentIndex(CityDataset cities) {
+		this.cities = cities;
+		cellSize = cellSize(cities);
+		latCells = (int) Math.ceil(180 / cellSize);
+		lonCells = (int) Math.ceil(360 / cellSize);
+		byArea = sortByArea(cities);
+
+		// Every city listed in its cells, as cell number << 32 | rank
+		int listed = 0;
+		int largeCount = 0;
+		for (int rank = 0; rank < byArea.length; rank++) {
+			long cells = cellCount(byArea[rank]);
+			if (cells > MAX_CELLS_PER_CITY) {
+				largeCount++;
+			} else {
+				listed += cells;
+			}
+		}
+		long[] entries = new long[listed];
+		large = new int[largeCount];
+		int entry = 0;
+		largeCount = 0;
+		for (int rank = 0; rank < byArea.length; rank++) {
+			int city = byArea[rank];
+			long cells = cellCount(city);
+			if (cells == 0) {
+				continue;
+			}
+			if (cells > MAX_CELLS_PER_CITY) {
+				large[largeCount++] = rank;
+				continue;
+			}
+			int toLat = latCell(cities.neLat[city]);
+			int toLon = lonCell(cities.neLon[city]);
+			for (int lat = latCell(cities.swLat[city]); lat <= toLat; lat++) {
+				for (int lon = lonCell(cities.swLon[city]); lon <= toLon; lon++) {
+					entries[entry++] = ((long) lat * lonCells + lon) << 32 | rank;
+				}
+			}
+		}
+		Arrays.sort(entries);
+
+		int cellCount = 0;
+		for (int i = 0; i < entries.length; i++) {
+			if (i == 0 || entries[i] >>> 32 != entries[i - 1] >>> 32) {
+				cellCount++;
+			}
+		}
+		int slots = Integer.highestOneBit(Math.max(cellCount, 1) * 2 - 1) << 1;
+		slotCells = new long[slots];
+		slotStart = new int[slots];
+		slotEnd = new int[slots];
+		ranks = new int[entries.length];
+		for (int i = 0; i < entries.length;) {
+			long cell = entries[i] >>> 32;
+			int slot = (int) mix(cell) & (slots - 1);
+			while (slotCells[slot] != 0) {
+				slot = (slot + 1) & (slots - 1);
+			}
+			slotCells[slot] = cell + 1;
+			slotStart[slot] = i;
+			for (; i < entries.length && entries[i] >>> 32 == cell; i++) {
+				ranks[i] = (int) entries[i];
+			}
+			slotEnd[slot] = i;
+		}
+	}
+
+	public CityDataset getDataset() {
+		return cities;
+	}
+
+	/**
+	 * Finds every city whose bounds contain the point, the smallest bounds
+	 * first. The distance of the results is 0.
+	 *
+	 * @param longitude
+	 * @param latitude
+	 * @param result    Buffer which receives the cities
+	 */
+	public void findContaining(double longitude, double latitude, QueryResult result) {
+		result.clear();
+		if (!(Math.abs(latitude) <= 90 && Math.abs(longitude) <= 180)) {
+			return;
+		}
+		long cell = (long) latCell(latitude) * lonCells + lonCell(longitude);
+		int mask = slotCells.length - 1;
+		int slot = (int) mix(cell) & mask;
+		while (slotCells[slot] != 0 && slotCells[slot] != cell + 1) {
+			slot = (slot + 1) & mask;
+		}
+		int from = slotCells[slot] == 0 ? 0 : slotStart[slot];
+		int to = slotCells[slot] == 0 ? 0 : slotEnd[slot];
+
+		// Both lists are ordered by the rank, so they are merged in that order
+		int next = 0;
+		for (int i = from; i < to; i++) {
+			for (; next < large.length && large[next] < ranks[i]; next++) {
+				addIfInside(large[next], longitude, latitude, result);
+			}
+			addIfInside(ranks[i], longitude, latitude, result);
+		}
+		for (; next < large.length; next++) {
+			addIfInside(large[next], longitude, latitude, result);
+		}
+	}
+
+	private void addIfInside(int rank, double longitude, double latitude, QueryResult result) {
+		int city = byArea[rank];
+		if (latitude >= cities.swLat[city] && latitude <= cities.neLat[city] && longitude >= cities.swLon[city]
+				&& longitude <= cities.neLon[city]) {
+			result.add(cities.ids[city], cities.names[city], cities.countries[city], 0.0);
+		}
+	}
+
+	/**
+	 * @return Number of cells the bounds of the city overlap, 0 if the bounds
+	 *         can't contain any point
+	 */
+	private long cellCount(int city) {
+		if (!(cities.swLat[city] <= cities.neLat[city] && cities.swLon[city] <= cities.neLon[city])) {
+			return 0;
+		}
+		return (long) (latCell(cities.neLat[city]) - latCell(cities.swLat[city]) + 1)
+				* (lonCell(cities.neLon[city]) - lonCell(cities.swLon[city]) + 1);
+	}
+
+	private int latCell(double latitude) {
+		return Math.max(Math.min((int) Math.floor((latitude + 90) / cellSize), latCells - 1), 0);
+	}
+
+	private int lonCell(double longitude) {
+		return Math.max(Math.min((int) Math.floor((longitude + 180) / cellSize), lonCells - 1), 0);
+	}
+
+	private static long mix(long cell) {
+		long hash = cell * 0x9E3779B97F4A7C15L;
+		return hash ^ (hash >>> 29);
+	}
+
+	/**
+	 * @return Median extent of the city bounds in degrees, within the cell size
+	 *         limits
+	 */
+	private static double cellSize(CityDataset cities) {
+		double[] extents = new double[cities.size];
+		int count = 0;
+		for (int i = 0; i < cities.size; i++) {
+			double extent = Math.max(cities.neLat[i] - cities.swLat[i], cities.neLon[i] - cities.swLon[i]);
+			if (extent >= 0) {
+				extents[count++] = extent;
+			}
+		}
+		if (count == 0) {
+			return MAX_CELL_SIZE;
+		}
+		Arrays.sort(extents, 0, count);
+		return Math.max(Math.min(extents[count / 2], MAX_CELL_SIZE), MIN_CELL_SIZE);
+	}
+
+	private static int[] sortByArea(CityDataset cities) {
+		long[] keys = new long[cities.size];
+		for (int i = 0; i < cities.size; i++) {
+			double area = Math.max(cities.neLat[i] - cities.swLat[i], 0)
+					* Math.max(cities.neLon[i] - cities.swLon[i], 0);
+			// Non-negative floats sort like their bits, the index keeps equal areas
+			// in the dataset order
+			keys[i] = (long) Float.floatToIntBits((float) area) << 32 | i;
+		}
+		Arrays.sort(keys);
+		int[] order = new int[cities.size];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = (int) keys[i];
+		}
+		return order;
+	}
+}
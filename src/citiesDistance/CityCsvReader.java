@@ -0,0 +1,297 @@
+package citiesDistance;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streaming reader of the semicolon separated import CSV, or of a file with
+ * another single byte separator, such as the tab separated gazetteer dumps
+ * read by {@link GazetteerImport}. The file is read through a file channel
+ * into one large buffer and the rows are split on the bytes, without regular
+ * expressions. The separator and the line breaks are ASCII, so they can't be
+ * part of a multi-byte UTF-8 character, and only the fields which are asked
+ * for are decoded, explicitly as UTF-8. A row only stays valid until the next
+ * one is read.
+ *
+ * The fields of the import CSV may be quoted with double quotes, as
+ * spreadsheets save the fields which contain the separator, and a quote inside
+ * a quoted field is doubled. A quoted field can't contain a line break, every
+ * line is a row. A field which starts with a quote but doesn't end with one is
+ * read as it is.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class CityCsvReader implements Closeable {
+	static final int BUFFER_SIZE = 1 << 20;
+	static final byte SEPARATOR = ';';
+	private static final byte QUOTE = '"';
+	// Maps the file in windows for counting, so files over 2 GB can be counted
+	private static final long COUNT_WINDOW = 1L << 28;
+
+	private final FileChannel channel;
+	private final byte separator;
+	private final boolean quoted;
+	private byte[] bytes;
+	// Unread bytes of the buffer
+	private int position, limit;
+	private boolean endOfFile;
+	private long bytesRead;
+	private int row = -1;
+	private int[] fieldStart = new int[4];
+	private int[] fieldEnd = new int[4];
+	// Quoted fields with doubled quotes
+	private boolean[] fieldEscaped = new boolean[4];
+	private int fieldCount;
+	// Set by closingQuote() if the quoted field has doubled quotes
+	private boolean escaped;
+
+	/**
+	 * Reader of the import CSV, whose fields may be quoted
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	public CityCsvReader(Path path) throws IOException {
+		this(path, SEPARATOR, true, BUFFER_SIZE);
+	}
+
+	/**
+	 * Reader of a file without quoted fields, such as the GeoNames dumps, whose
+	 * names may start with a quote
+	 *
+	 * @param path
+	 * @param separator ASCII field separator
+	 * @throws IOException
+	 */
+	public CityCsvReader(Path path, char separator) throws IOException {
+		this(path, (byte) separator, false, BUFFER_SIZE);
+	}
+
+	/**
+	 * @param path
+	 * @param separator  ASCII field separator
+	 * @param quoted     Whether the fields may be quoted
+	 * @param bufferSize Initial size of the buffer, which grows for longer rows
+	 * @throws IOException
+	 */
+	CityCsvReader(Path path, byte separator, boolean quoted, int bufferSize) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.separator = separator;
+		this.quoted = quoted;
+		bytes = new byte[bufferSize];
+	}
+
+	/**
+	 * Counts the lines of a file, including the header. The file is memory-mapped
+	 * and only the line breaks are counted, so it is much faster than reading the
+	 * rows.
+	 *
+	 * @param path
+	 * @return Number of lines, the last one also counts without a line break
+	 * @throws IOException
+	 */
+	public static long countRows(Path path) throws IOException {
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = file.size();
+			long lines = 0;
+			byte last = '\n';
+			for (long offset = 0; offset < size; offset += COUNT_WINDOW) {
+				MappedByteBuffer window = file.map(FileChannel.MapMode.READ_ONLY, offset,
+						Math.min(COUNT_WINDOW, size - offset));
+				int length = window.limit();
+				for (int i = 0; i < length; i++) {
+					if (window.get(i) == '\n') {
+						lines++;
+					}
+				}
+				last = window.get(length - 1);
+			}
+			return last == '\n' ? lines : lines + 1;
+		}
+	}
+
+	/**
+	 * Continues reading at an offset of the file, such as the end of a row
+	 * returned by {@link #getBytesRead()} in an earlier read
+	 *
+	 * @param offset Offset of the start of a row
+	 * @param row    Line number of the row before the offset
+	 * @throws IOException
+	 */
+	public void seek(long offset, int row) throws IOException {
+		channel.position(offset);
+		position = 0;
+		limit = 0;
+		endOfFile = false;
+		bytesRead = offset;
+		this.row = row;
+	}
+
+	/**
+	 * Reads the next row and splits it into fields
+	 *
+	 * @return False at the end of the file
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		int end;
+		while ((end = findLineEnd()) < 0) {
+			if (endOfFile) {
+				if (position == limit) {
+					return false;
+				}
+				// The last row has no line break
+				end = limit;
+				break;
+			}
+			fill();
+		}
+
+		int start = position;
+		position = Math.min(end + 1, limit);
+		bytesRead += position - start;
+		if (end > start && bytes[end - 1] == '\r') {
+			end--;
+		}
+		row++;
+		if (row == 0 && end - start >= 3 && bytes[start] == (byte) 0xEF && bytes[start + 1] == (byte) 0xBB
+				&& bytes[start + 2] == (byte) 0xBF) {
+			// Byte order mark
+			start += 3;
+		}
+		split(start, end);
+		return true;
+	}
+
+	private int findLineEnd() {
+		for (int i = position; i < limit; i++) {
+			if (bytes[i] == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Moves the unread bytes to the start of the buffer and reads more after
+	 * them. The buffer is doubled if a row doesn't fit into it.
+	 */
+	private void fill() throws IOException {
+		int remaining = limit - position;
+		if (remaining == bytes.length) {
+			bytes = Arrays.copyOf(bytes, bytes.length * 2);
+		} else {
+			System.arraycopy(bytes, position, bytes, 0, remaining);
+		}
+		position = 0;
+		limit = remaining;
+		int read = channel.read(ByteBuffer.wrap(bytes, remaining, bytes.length - remaining));
+		if (read < 0) {
+			endOfFile = true;
+		} else {
+			limit += read;
+		}
+	}
+
+	private void split(int start, int end) {
+		fieldCount = 0;
+		int from = start;
+		while (true) {
+			int close = quoted && from < end && bytes[from] == QUOTE ? closingQuote(from + 1, end) : -1;
+			int next;
+			if (close >= 0) {
+				addField(from + 1, close, escaped);
+				next = close + 1;
+			} else {
+				next = from;
+				while (next < end && bytes[next] != separator) {
+					next++;
+				}
+				addField(from, next, false);
+			}
+			if (next == end) {
+				return;
+			}
+			from = next + 1;
+		}
+	}
+
+	/**
+	 * @return Position of the quote which ends the quoted field, -1 if the field
+	 *         doesn't end with it
+	 */
+	private int closingQuote(int from, int end) {
+		escaped = false;
+		for (int i = from; i < end; i++) {
+			if (bytes[i] == QUOTE) {
+				if (i + 1 < end && bytes[i + 1] == QUOTE) {
+					escaped = true;
+					i++;
+				} else {
+					return i + 1 == end || bytes[i + 1] == separator ? i : -1;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private void addField(int from, int to, boolean escapedQuotes) {
+		if (fieldCount == fieldStart.length) {
+			fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+			fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+			fieldEscaped = Arrays.copyOf(fieldEscaped, fieldCount * 2);
+		}
+		fieldStart[fieldCount] = from;
+		fieldEnd[fieldCount] = to;
+		fieldEscaped[fieldCount] = escapedQuotes;
+		fieldCount++;
+	}
+
+	/**
+	 * @return Line number of the current row, 0 for the header
+	 */
+	public int getRow() {
+		return row;
+	}
+
+	/**
+	 * @return Number of fields of the current row, 1 for an empty row
+	 */
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * @param field Index of the field in the row
+	 * @return The decoded field
+	 */
+	public String getField(int field) {
+		if (field >= fieldCount) {
+			throw new IndexOutOfBoundsException("Row " + row + " has " + fieldCount + " fields");
+		}
+		String value = new String(bytes, fieldStart[field], fieldEnd[field] - fieldStart[field],
+				StandardCharsets.UTF_8);
+		return fieldEscaped[field] ? value.replace("\"\"", "\"") : value;
+	}
+
+	/**
+	 * @return Bytes of the file read up to the end of the current row
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
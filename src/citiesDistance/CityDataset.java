@@ -0,0 +1,131 @@
+package citiesDistance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Read-only, column oriented copy of the city data used by the in-memory query
+ * engines. Every column is a primitive array indexed by the position of the
+ * city in the dataset.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class CityDataset {
+	static final String ALL_CITIES_QUERY = "City.findAll";
+
+	final int size;
+	final int[] ids;
+	final String[] names;
+	final String[] countries;
+	final double[] centreLat, centreLon;
+	final double[] swLat, swLon, neLat, neLon;
+
+	CityDataset(int size) {
+		this.size = size;
+		ids = new int[size];
+		names = new String[size];
+		countries = new String[size];
+		centreLat = new double[size];
+		centreLon = new double[size];
+		swLat = new double[size];
+		swLon = new double[size];
+		neLat = new double[size];
+		neLon = new double[size];
+	}
+
+	/**
+	 * Loads every city with its bounds and location from the database
+	 *
+	 * @param entityManager
+	 * @return The loaded dataset
+	 */
+	public static CityDataset load(EntityManager entityManager) {
+		List<City> cities = entityManager.createNamedQuery(ALL_CITIES_QUERY, City.class).getResultList();
+
+		CityDataset dataset = new CityDataset(cities.size());
+		int i = 0;
+		for (City city : cities) {
+			dataset.set(i++, city);
+		}
+		return dataset;
+	}
+
+	/**
+	 * Creates a copy of the dataset with the cities merged in by their id, so the
+	 * copy stays sorted by the id like the loaded dataset. Cities whose id is
+	 * already in the dataset are skipped. The dataset itself isn't modified.
+	 *
+	 * @param cities Cities to add, sorted by their id
+	 * @return The extended dataset
+	 */
+	CityDataset merge(List<City> cities) {
+		List<City> added = new ArrayList<>(cities.size());
+		for (City city : cities) {
+			int id = city.getId();
+			if (Arrays.binarySearch(ids, 0, size, id) < 0
+					&& (added.isEmpty() || added.get(added.size() - 1).getId() != id)) {
+				added.add(city);
+			}
+		}
+
+		CityDataset merged = new CityDataset(size + added.size());
+		int copied = 0;
+		int i = 0;
+		for (City city : added) {
+			// The cities of the dataset with smaller ids are copied in one run
+			int position = -Arrays.binarySearch(ids, copied, size, city.getId()) - 1;
+			copy(copied, merged, i, position - copied);
+			i += position - copied;
+			copied = position;
+			merged.set(i++, city);
+		}
+		copy(copied, merged, i, size - copied);
+		return merged;
+	}
+
+	private void copy(int from, CityDataset target, int to, int length) {
+		System.arraycopy(ids, from, target.ids, to, length);
+		System.arraycopy(names, from, target.names, to, length);
+		System.arraycopy(countries, from, target.countries, to, length);
+		System.arraycopy(centreLat, from, target.centreLat, to, length);
+		System.arraycopy(centreLon, from, target.centreLon, to, length);
+		System.arraycopy(swLat, from, target.swLat, to, length);
+		System.arraycopy(swLon, from, target.swLon, to, length);
+		System.arraycopy(neLat, from, target.neLat, to, length);
+		System.arraycopy(neLon, from, target.neLon, to, length);
+	}
+
+	void set(int i, City city) {
+		Bounds bounds = city.getBounds();
+		ids[i] = city.getId();
+		names[i] = city.getName();
+		countries[i] = city.getCountry();
+		centreLat[i] = city.getLocation().getLatitude();
+		centreLon[i] = city.getLocation().getLongitude();
+		swLat[i] = bounds.getSouthWest().getLatitude();
+		swLon[i] = bounds.getSouthWest().getLongitude();
+		neLat[i] = bounds.getNorthEast().getLatitude();
+		neLon[i] = bounds.getNorthEast().getLongitude();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getId(int i) {
+		return ids[i];
+	}
+
+	public String getName(int i) {
+		return names[i];
+	}
+
+	public String getCountry(int i) {
+		return countries[i];
+	}
+}
@@ -0,0 +1,154 @@
+package citiesDistance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * In-memory query engine whose city data can be extended while it is queried.
+ * Every dataset is published through an atomic reference together with its
+ * immutable {@link InMemoryQueryEngine}, an R-tree or the scan columns, and
+ * its {@link CityContainmentIndex}, so the queries never block and never see a
+ * half-imported dataset. Imported chunks are queued and a background thread
+ * builds the next dataset, its engine and its containment index from a copy
+ * of the published one, then swaps them in. Chunks which arrive during a
+ * build are merged into the next one.
+ *
+ * Every build copies the whole dataset, so building once per chunk would cost
+ * time quadratic in the number of chunks. After every build the next one waits
+ * as long as the build took, and the chunks arriving meanwhile are merged into
+ * one build. The builds so take at most half of the background thread's time,
+ * however small the chunks are.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class CityDatasetPublisher implements DistanceQueryEngine {
+	private final Function<CityDataset, InMemoryQueryEngine> engineFactory;
+	private final AtomicReference<Published> published;
+	private final Queue<List<City>> pendingChunks = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+	private final AtomicLong version = new AtomicLong();
+	// Earliest start of the next build
+	private volatile long nextBuild = System.nanoTime();
+	private final ScheduledExecutorService rebuilder = Executors.newSingleThreadScheduledExecutor(task -> {
+		Thread thread = new Thread(task, "city-dataset-publisher");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Dataset with the engine and the containment index built for it
+	 */
+	private static final class Published {
+		final InMemoryQueryEngine engine;
+		final CityContainmentIndex containment;
+
+		Published(InMemoryQueryEngine engine, CityContainmentIndex containment) {
+			this.engine = engine;
+			this.containment = containment;
+		}
+	}
+
+	/**
+	 * @param initial       Cities available before the import, sorted by their id
+	 * @param engineFactory Creates the engine of every published dataset
+	 */
+	CityDatasetPublisher(CityDataset initial, Function<CityDataset, InMemoryQueryEngine> engineFactory) {
+		this.engineFactory = engineFactory;
+		published = new AtomicReference<>(build(initial));
+	}
+
+	private Published build(CityDataset dataset) {
+		return new Published(engineFactory.apply(dataset), new CityContainmentIndex(dataset));
+	}
+
+	/**
+	 * Runs the query on the dataset published when the query starts
+	 */
+	@Override
+	public void findClosest(double longitude, double latitude, int searchRadius, int limit, QueryResult result) {
+		published.get().engine.findClosest(longitude, latitude, searchRadius, limit, result);
+	}
+
+	/**
+	 * Looks the point up in the containment index of the dataset published when
+	 * the query starts
+	 */
+	@Override
+	public void findContaining(double longitude, double latitude, QueryResult result) {
+		published.get().containment.findContaining(longitude, latitude, result);
+	}
+
+	/**
+	 * @return The currently published dataset, which is never modified
+	 */
+	public CityDataset getDataset() {
+		return published.get().engine.getDataset();
+	}
+
+	/**
+	 * @return Engine of the currently published dataset
+	 */
+	InMemoryQueryEngine getPublished() {
+		return published.get().engine;
+	}
+
+	/**
+	 * @return Number of datasets published since the engine was created
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Adds a committed chunk of imported cities. The call only queues the chunk,
+	 * the new dataset is built in the background. Cities which the published
+	 * dataset already has are skipped.
+	 *
+	 * @param chunk Cities saved in one transaction, with their ids assigned
+	 */
+	public void append(List<City> chunk) {
+		pendingChunks.add(chunk);
+		if (rebuildScheduled.compareAndSet(false, true)) {
+			rebuilder.schedule(this::rebuild, Math.max(nextBuild - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private void rebuild() {
+		// Cleared before the queue is drained, so a chunk added during the build
+		// schedules the next one
+		rebuildScheduled.set(false);
+		List<City> added = new ArrayList<>();
+		List<City> chunk;
+		while ((chunk = pendingChunks.poll()) != null) {
+			added.addAll(chunk);
+		}
+		if (added.isEmpty()) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		try {
+			added.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+			CityDataset next = getDataset().merge(added);
+			published.set(build(next));
+			version.incrementAndGet();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			System.out.println("Error while publishing " + added.size() + " imported cities to the query engine.");
+		} finally {
+			long end = System.nanoTime();
+			nextBuild = end + (end - start);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package citiesDistance;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Migrates a database created with the former normalised schema, where a city
+ * was spread over the CITY, BOUNDS, COORDINATES and LOCATION tables, to the
+ * compact schema with the location and bounds stored as columns of the CITY
+ * row. The migration runs in one transaction, drops the former tables and
+ * compacts the database file afterwards. It does nothing if the database
+ * doesn't contain the former tables.
+ *
+ * @author Rolandas
+ *
+ */
+
+public final class CitySchemaMigration {
+	private static final String[] CITY_COLUMNS = { "LATITUDE", "LONGITUDE", "SW_LATITUDE", "SW_LONGITUDE",
+			"NE_LATITUDE", "NE_LONGITUDE" };
+	private static final String[] LEGACY_TABLES = { "COORDINATES", "BOUNDS", "LOCATION" };
+
+	// The south west corner was always persisted before the north east one, so
+	// it has the lower id
+	private static final String CORNER_QUERY = "(SELECT co.%s FROM BOUNDS b JOIN COORDINATES co"
+			+ " ON co.BOUNDS_ID = b.ID WHERE b.CITY_ID = CITY.ID ORDER BY co.ID %s LIMIT 1)";
+
+	private CitySchemaMigration() {
+	}
+
+	/**
+	 * Migrates the database. It must be called before the persistence unit is
+	 * deployed.
+	 */
+	public static void migrate() {
+		try (Connection connection = CitiesPersistence.openConnection()) {
+			Set<String> tables = getTables(connection);
+			if (!tables.contains("CITY") || !tables.contains("LOCATION")) {
+				return;
+			}
+
+			System.out.println("Migrating the city data to the compact schema...");
+			connection.setAutoCommit(false);
+			try (Statement statement = connection.createStatement()) {
+				Set<String> columns = getColumns(connection, "CITY");
+				for (String column : CITY_COLUMNS) {
+					if (!columns.contains(column)) {
+						statement.executeUpdate("ALTER TABLE CITY ADD COLUMN " + column + " DOUBLE");
+					}
+				}
+
+				statement.executeUpdate("UPDATE CITY SET"
+						+ " LATITUDE = (SELECT l.LATITUDE FROM LOCATION l WHERE l.CITY_ID = CITY.ID),"
+						+ " LONGITUDE = (SELECT l.LONGITUDE FROM LOCATION l WHERE l.CITY_ID = CITY.ID),"
+						+ " SW_LATITUDE = " + String.format(CORNER_QUERY, "LATITUDE", "ASC") + ","
+						+ " SW_LONGITUDE = " + String.format(CORNER_QUERY, "LONGITUDE", "ASC") + ","
+						+ " NE_LATITUDE = " + String.format(CORNER_QUERY, "LATITUDE", "DESC") + ","
+						+ " NE_LONGITUDE = " + String.format(CORNER_QUERY, "LONGITUDE", "DESC"));
+
+				for (String table : LEGACY_TABLES) {
+					if (tables.contains(table)) {
+						statement.executeUpdate("DROP TABLE " + table);
+					}
+				}
+				connection.commit();
+			} catch (SQLException e) {
+				connection.rollback();
+				throw e;
+			}
+
+			// Returns the pages of the dropped tables to the file system
+			connection.setAutoCommit(true);
+			try (Statement statement = connection.createStatement()) {
+				statement.executeUpdate("VACUUM");
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			System.out.println("Error while migrating the database to the compact schema.");
+		}
+	}
+
+	private static Set<String> getTables(Connection connection) throws SQLException {
+		Set<String> tables = new HashSet<>();
+		try (Statement statement = connection.createStatement();
+				ResultSet rows = statement.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table'")) {
+			while (rows.next()) {
+				tables.add(rows.getString(1).toUpperCase());
+			}
+		}
+		return tables;
+	}
+
+	private static Set<String> getColumns(Connection connection, String table) throws SQLException {
+		Set<String> columns = new HashSet<>();
+		try (Statement statement = connection.createStatement();
+				ResultSet rows = statement.executeQuery("PRAGMA table_info(" + table + ")")) {
+			while (rows.next()) {
+				columns.add(rows.getString("name").toUpperCase());
+			}
+		}
+		return columns;
+	}
+}
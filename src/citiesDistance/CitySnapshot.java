@@ -0,0 +1,271 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned, column oriented binary snapshot of the {@link CityDataset}. It
+ * lets the in-memory query engines start without bootstrapping the persistence
+ * unit. The file is mapped only to read it: the columns are bulk-copied into
+ * the heap arrays of the dataset and the names are decoded once, so loading a
+ * snapshot is fast, but it takes as much heap as loading the database and the
+ * data isn't shared between processes. A CRC-32 of everything after the
+ * header is checked before the columns are read, so a damaged file isn't
+ * loaded as wrong coordinates.
+ *
+ * The file is little-endian and laid out as follows, every column starting at
+ * a multiple of 8 bytes:
+ *
+ * <pre>
+ * header         magic "CDSN", version, size, country count, name bytes,
+ *                country bytes, CRC-32 (7 ints, padded to 32 bytes)
+ * double columns centre lat, centre lon, SW lat, SW lon, NE lat, NE lon
+ * int columns    ids, country index, name offsets (size + 1),
+ *                country offsets (country count + 1)
+ * byte columns   UTF-8 names, UTF-8 country names
+ * </pre>
+ *
+ * @author Rolandas
+ *
+ */
+
+public final class CitySnapshot {
+	static final int MAGIC = 0x4E534443; // "CDSN" in little-endian
+	static final int VERSION = 2;
+	// Version without the checksum, which is still read
+	private static final int VERSION_WITHOUT_CHECKSUM = 1;
+	private static final int HEADER_SIZE = 32;
+
+	private CitySnapshot() {
+	}
+
+	/**
+	 * Writes the dataset to the snapshot file. The file is written next to the
+	 * target and moved over it once complete, so readers never see a partial
+	 * snapshot.
+	 *
+	 * @param dataset
+	 * @param path    Snapshot file
+	 * @throws IOException
+	 */
+	public static void write(CityDataset dataset, Path path) throws IOException {
+		int size = dataset.size;
+
+		// Countries repeat a lot, so they are stored once and referenced by index
+		Map<String, Integer> countryIndex = new HashMap<>();
+		List<byte[]> countries = new ArrayList<>();
+		int[] cityCountries = new int[size];
+		byte[][] names = new byte[size][];
+		int nameBytes = 0, countryBytes = 0;
+		for (int i = 0; i < size; i++) {
+			names[i] = encode(dataset.names[i]);
+			nameBytes += names[i].length;
+
+			String country = dataset.countries[i] == null ? "" : dataset.countries[i];
+			Integer index = countryIndex.get(country);
+			if (index == null) {
+				index = countries.size();
+				countryIndex.put(country, index);
+				countries.add(encode(country));
+				countryBytes += countries.get(index).length;
+			}
+			cityCountries[i] = index;
+		}
+
+		Layout layout = new Layout(size, countries.size(), nameBytes, countryBytes);
+		Path parent = path.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		// Not created with createTempFile, which would make the file private to the
+		// user, while the snapshot may be read by other processes
+		Path temporary = parent.resolve(path.getFileName() + ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, layout.length);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+				buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(countries.size());
+				buffer.putInt(nameBytes).putInt(countryBytes);
+				int checksumPosition = buffer.position();
+
+				column(buffer, layout.centreLat).asDoubleBuffer().put(dataset.centreLat, 0, size);
+				column(buffer, layout.centreLon).asDoubleBuffer().put(dataset.centreLon, 0, size);
+				column(buffer, layout.swLat).asDoubleBuffer().put(dataset.swLat, 0, size);
+				column(buffer, layout.swLon).asDoubleBuffer().put(dataset.swLon, 0, size);
+				column(buffer, layout.neLat).asDoubleBuffer().put(dataset.neLat, 0, size);
+				column(buffer, layout.neLon).asDoubleBuffer().put(dataset.neLon, 0, size);
+				column(buffer, layout.ids).asIntBuffer().put(dataset.ids, 0, size);
+				column(buffer, layout.countryIndex).asIntBuffer().put(cityCountries);
+
+				ByteBuffer nameOffsets = column(buffer, layout.nameOffsets);
+				ByteBuffer nameData = column(buffer, layout.names);
+				for (byte[] name : names) {
+					nameOffsets.putInt(nameData.position());
+					nameData.put(name);
+				}
+				nameOffsets.putInt(nameData.position());
+
+				ByteBuffer countryOffsets = column(buffer, layout.countryOffsets);
+				ByteBuffer countryData = column(buffer, layout.countries);
+				for (byte[] country : countries) {
+					countryOffsets.putInt(countryData.position());
+					countryData.put(country);
+				}
+				countryOffsets.putInt(countryData.position());
+
+				buffer.putInt(checksumPosition, checksum(buffer));
+				buffer.force();
+			}
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Maps the snapshot file and reads the dataset from it. The coordinate
+	 * columns are copied with bulk reads into the primitive arrays used by the
+	 * query engines, and every name and country is decoded into a string, so
+	 * nothing refers to the mapping once the dataset is read.
+	 *
+	 * @param path Snapshot file
+	 * @return The dataset stored in the snapshot
+	 * @throws IOException If the file can't be read, isn't a snapshot, has an
+	 *                     unsupported version or is damaged
+	 */
+	public static CityDataset read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE) {
+				throw new IOException(path + " isn't a city snapshot");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException(path + " isn't a city snapshot");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION && version != VERSION_WITHOUT_CHECKSUM) {
+				throw new IOException("Unsupported city snapshot version " + version + " in " + path);
+			}
+			int size = buffer.getInt();
+			int countryCount = buffer.getInt();
+			Layout layout = new Layout(size, countryCount, buffer.getInt(), buffer.getInt());
+			if (layout.length != channel.size()) {
+				throw new IOException("City snapshot " + path + " is truncated");
+			}
+			int checksum = buffer.getInt();
+			if (version != VERSION_WITHOUT_CHECKSUM && checksum != checksum(buffer)) {
+				throw new IOException("Checksum of the city snapshot " + path + " doesn't match");
+			}
+
+			CityDataset dataset = new CityDataset(size);
+			column(buffer, layout.centreLat).asDoubleBuffer().get(dataset.centreLat);
+			column(buffer, layout.centreLon).asDoubleBuffer().get(dataset.centreLon);
+			column(buffer, layout.swLat).asDoubleBuffer().get(dataset.swLat);
+			column(buffer, layout.swLon).asDoubleBuffer().get(dataset.swLon);
+			column(buffer, layout.neLat).asDoubleBuffer().get(dataset.neLat);
+			column(buffer, layout.neLon).asDoubleBuffer().get(dataset.neLon);
+			column(buffer, layout.ids).asIntBuffer().get(dataset.ids);
+
+			String[] countries = readStrings(column(buffer, layout.countryOffsets), column(buffer, layout.countries),
+					countryCount);
+			ByteBuffer countryIndex = column(buffer, layout.countryIndex);
+			for (int i = 0; i < size; i++) {
+				dataset.countries[i] = countries[countryIndex.getInt()];
+			}
+			String[] names = readStrings(column(buffer, layout.nameOffsets), column(buffer, layout.names), size);
+			System.arraycopy(names, 0, dataset.names, 0, size);
+			return dataset;
+		}
+	}
+
+	private static String[] readStrings(ByteBuffer offsets, ByteBuffer data, int count) {
+		String[] strings = new String[count];
+		byte[] scratch = new byte[64];
+		int start = offsets.getInt();
+		for (int i = 0; i < count; i++) {
+			int end = offsets.getInt();
+			int length = end - start;
+			if (length > scratch.length) {
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+			}
+			data.position(start);
+			data.get(scratch, 0, length);
+			strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+			start = end;
+		}
+		return strings;
+	}
+
+	/**
+	 * @return CRC-32 of the bytes after the header
+	 */
+	private static int checksum(ByteBuffer buffer) {
+		CRC32 crc = new CRC32();
+		ByteBuffer data = buffer.duplicate();
+		data.position(HEADER_SIZE);
+		crc.update(data);
+		return (int) crc.getValue();
+	}
+
+	private static byte[] encode(String text) {
+		return text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return Little-endian view of the column which starts at the offset
+	 */
+	private static ByteBuffer column(ByteBuffer buffer, long offset) {
+		ByteBuffer column = buffer.duplicate();
+		column.position((int) offset);
+		return column.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Offsets of the columns in the file
+	 */
+	private static class Layout {
+		final long centreLat, centreLon, swLat, swLon, neLat, neLon;
+		final long ids, countryIndex, nameOffsets, countryOffsets, names, countries;
+		final long length;
+
+		Layout(int size, int countryCount, int nameBytes, int countryBytes) {
+			long doubleColumn = 8L * size;
+			long intColumn = align(4L * size);
+			centreLat = HEADER_SIZE;
+			centreLon = centreLat + doubleColumn;
+			swLat = centreLon + doubleColumn;
+			swLon = swLat + doubleColumn;
+			neLat = swLon + doubleColumn;
+			neLon = neLat + doubleColumn;
+			ids = neLon + doubleColumn;
+			countryIndex = ids + intColumn;
+			nameOffsets = countryIndex + intColumn;
+			countryOffsets = nameOffsets + align(4L * (size + 1));
+			names = countryOffsets + align(4L * (countryCount + 1));
+			countries = names + align(nameBytes);
+			length = countries + align(countryBytes);
+			if (length > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("City snapshot would exceed 2 GB");
+			}
+		}
+
+		private static long align(long bytes) {
+			return (bytes + 7) & ~7L;
+		}
+	}
+}
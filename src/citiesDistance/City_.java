@@ -4,7 +4,7 @@ import javax.annotation.Generated;
 import javax.persistence.metamodel.SingularAttribute;
 import javax.persistence.metamodel.StaticMetamodel;
 
-@Generated(value="Dali", date="2020-03-08T16:46:57.925+0200")
+@Generated(value="Dali", date="2026-10-17T14:12:31.395+0300")
 @StaticMetamodel(City.class)
 public class City_ {
 	public static volatile SingularAttribute<City, Integer> id;
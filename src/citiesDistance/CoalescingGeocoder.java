@@ -0,0 +1,122 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Makes every distinct request to a geocoder once. Concurrent identical
+ * requests wait for the one already in flight and share its response, or its
+ * failure. Responses with a final failure status (ZERO_RESULTS or
+ * INVALID_REQUEST) are cached negatively, so the same request, such as the
+ * city-only fallback of a city name found in many countries, isn't sent again.
+ * Failures of the service itself and temporary statuses (quota, denied key)
+ * aren't cached, as a later request may succeed.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class CoalescingGeocoder implements Geocoder {
+	static final int DEFAULT_NEGATIVE_CACHE_SIZE = 10000;
+
+	private static final Metrics.Counter RESPONSES_COALESCED = Metrics.counter("import.responses.coalesced");
+	private static final Metrics.Counter RESPONSES_NEGATIVE = Metrics.counter("import.responses.negative");
+
+	private final Geocoder service;
+	private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+	// Responses of the known failures by their request key, the least recently
+	// used are evicted
+	private final Map<String, byte[]> failures;
+
+	public CoalescingGeocoder(Geocoder service) {
+		this(service, DEFAULT_NEGATIVE_CACHE_SIZE);
+	}
+
+	/**
+	 * @param service           Geocoder of the distinct requests
+	 * @param negativeCacheSize Maximum number of cached known failures
+	 */
+	public CoalescingGeocoder(Geocoder service, int negativeCacheSize) {
+		this.service = service;
+		failures = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+				return size() > negativeCacheSize;
+			}
+		};
+	}
+
+	@Override
+	public byte[] geocode(String cityName, String countryName) throws IOException {
+		String key = GeocodeCache.key(cityName, countryName);
+		byte[] failure;
+		synchronized (failures) {
+			failure = failures.get(key);
+		}
+		if (failure != null) {
+			RESPONSES_NEGATIVE.increment();
+			return failure;
+		}
+
+		CompletableFuture<byte[]> request = new CompletableFuture<>();
+		CompletableFuture<byte[]> running = inFlight.putIfAbsent(key, request);
+		if (running != null) {
+			RESPONSES_COALESCED.increment();
+			return await(running);
+		}
+		try {
+			byte[] content = service.geocode(cityName, countryName);
+			if (GeocodeCache.isFinalFailure(content)) {
+				// Cached before the request leaves the in-flight map, so the next
+				// identical request finds one of them
+				synchronized (failures) {
+					failures.put(key, content);
+				}
+			}
+			request.complete(content);
+			return content;
+		} catch (Throwable e) {
+			// Also errors, otherwise the waiting requests would never return
+			request.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, request);
+		}
+	}
+
+	private static byte[] await(CompletableFuture<byte[]> request) throws IOException {
+		try {
+			return request.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the same request");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * @return Number of cached known failures
+	 */
+	public int getNegativeCacheSize() {
+		synchronized (failures) {
+			return failures.size();
+		}
+	}
+}
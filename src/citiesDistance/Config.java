@@ -44,8 +44,166 @@ public class Config {
 		return Integer.parseInt(getProperty("limit"));
 	}
 
+	/**
+	 * @return Name of the distance query engine, "jpql" if it isn't specified
+	 */
+	public String getEngine() {
+		return getProperty("engine", DistanceCalculator.ENGINE_JPQL);
+	}
+
+	/**
+	 * @return Base URL of the geocoding service, Google Maps API if it isn't
+	 *         specified
+	 */
+	public String getGeocodeURL() {
+		return getProperty("geocodeURL", GoogleGeocoder.DEFAULT_BASE_URL);
+	}
+
+	/**
+	 * @return Maximum number of concurrent geocoding requests during the import
+	 */
+	public int getImportConcurrency() {
+		return Integer.parseInt(
+				getProperty("importConcurrency", Integer.toString(CitiesDataImport.DEFAULT_CONCURRENCY)));
+	}
+
+	/**
+	 * @return Number of cities saved to the database in one transaction
+	 */
+	public int getBatchSize() {
+		return Integer.parseInt(getProperty("batchSize", Integer.toString(CitiesDataImport.DEFAULT_BATCH_SIZE)));
+	}
+
+	/**
+	 * @return Directory of the geocode response cache, empty if the cache is
+	 *         disabled
+	 */
+	public String getGeocodeCacheDir() {
+		return getProperty("geocodeCacheDir", "");
+	}
+
+	public long getGeocodeCacheTtlDays() {
+		return Long.parseLong(getProperty("geocodeCacheTtlDays", "30"));
+	}
+
+	public long getGeocodeCacheMaxMB() {
+		return Long.parseLong(getProperty("geocodeCacheMaxMB", "256"));
+	}
+
+	/**
+	 * @return JDBC URL of the city database
+	 */
+	public String getDatabaseURL() {
+		return getProperty("databaseURL", CitiesPersistence.DEFAULT_DATABASE_URL);
+	}
+
+	/**
+	 * @return Front end: "console" reads the coordinates from the console,
+	 *         "server" starts the HTTP query server
+	 */
+	public String getMode() {
+		return getProperty("mode", CitiesDistance.MODE_CONSOLE);
+	}
+
+	/**
+	 * @param defaultFile File used if none is configured
+	 * @return CSV file imported in the server mode
+	 */
+	public String getInputFile(String defaultFile) {
+		return getProperty("inputFile", defaultFile);
+	}
+
+	public int getServerPort() {
+		return Integer.parseInt(getProperty("serverPort", Integer.toString(CitiesServer.DEFAULT_PORT)));
+	}
+
+	/**
+	 * @return Number of request handling threads of the server, twice the number
+	 *         of processors if it isn't specified
+	 */
+	public int getServerThreads() {
+		return Integer.parseInt(
+				getProperty("serverThreads", Integer.toString(2 * Runtime.getRuntime().availableProcessors())));
+	}
+
+	/**
+	 * @return Maximum number of geohash cells in the result cache of the in-memory
+	 *         engine, 0 (the default) disables the cache
+	 */
+	public int getResultCacheSize() {
+		return Integer.parseInt(getProperty("resultCacheSize", "0"));
+	}
+
+	/**
+	 * @return Geohash precision of the result cache cells
+	 */
+	public int getResultCachePrecision() {
+		return Integer.parseInt(
+				getProperty("resultCachePrecision", Integer.toString(GeohashResultCache.DEFAULT_PRECISION)));
+	}
+
+	/**
+	 * @return If the counters and latency histograms are recorded and published
+	 *         through JMX
+	 */
+	public boolean isMetricsEnabled() {
+		return Boolean.parseBoolean(getProperty("metrics", "true"));
+	}
+
+	/**
+	 * @return If the query server answers GET /metrics with the plain text
+	 *         metrics
+	 */
+	public boolean isMetricsEndpoint() {
+		return Boolean.parseBoolean(getProperty("metricsEndpoint", "false"));
+	}
+
+	/**
+	 * @return Startup mode: "fast" skips the import of an unchanged CSV, "full"
+	 *         always runs it
+	 */
+	public String getStartupMode() {
+		return getProperty("startup", CitiesDistance.STARTUP_FAST);
+	}
+
+	/**
+	 * @return Path of the binary city snapshot used by the in-memory engines,
+	 *         empty if it is disabled
+	 */
+	public String getSnapshotFile() {
+		return getProperty("snapshotFile", "");
+	}
+
+	/**
+	 * @return Source of the imported cities: "geocoder" geocodes the rows of a
+	 *         CSV, "gazetteer" bulk imports a GeoNames dump
+	 */
+	public String getImportSource() {
+		return getProperty("importSource", CitiesDistance.IMPORT_GEOCODER);
+	}
+
+	/**
+	 * @return Path of the journal which lets an interrupted import resume, empty
+	 *         if it is disabled
+	 */
+	public String getImportJournal() {
+		return getProperty("importJournal", "");
+	}
+
+	/**
+	 * @return If the import should only replay the cached geocode responses
+	 */
+	public boolean isOffline() {
+		return Boolean.parseBoolean(getProperty("offline", "false"));
+	}
+
 	public String getProperty(String key) {
 		String value = this.configFile.getProperty(key);
 		return value;
 	}
+
+	public String getProperty(String key, String defaultValue) {
+		String value = getProperty(key);
+		return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+	}
 }
@@ -1,36 +1,19 @@
 package citiesDistance;
 
-import javax.persistence.Entity;
-import javax.persistence.FetchType;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
-import javax.persistence.Id;
-import javax.persistence.ManyToOne;
+import javax.persistence.Embeddable;
 
 /**
- * Represents the entity of coordinates
+ * Represents a pair of coordinates. They are embedded into the row of the
+ * city which owns them.
  * 
  * @author Rolandas
  *
  */
 
-@Entity
+@Embeddable
 public class Coordinates {
 	private double latitude;
 	private double longitude;
-	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
-	private int id;
-	@ManyToOne(fetch = FetchType.LAZY)
-	private Bounds bounds;
-
-	public Bounds getBounds() {
-		return bounds;
-	}
-
-	public void setBounds(Bounds bounds) {
-		this.bounds = bounds;
-	}
 
 	Coordinates(double latitude, double longitude) {
 		super();
@@ -4,11 +4,9 @@ import javax.annotation.Generated;
 import javax.persistence.metamodel.SingularAttribute;
 import javax.persistence.metamodel.StaticMetamodel;
 
-@Generated(value="Dali", date="2020-03-03T21:10:04.586+0200")
+@Generated(value="Dali", date="2026-10-17T14:12:31.398+0300")
 @StaticMetamodel(Coordinates.class)
 public class Coordinates_ {
 	public static volatile SingularAttribute<Coordinates, Double> latitude;
 	public static volatile SingularAttribute<Coordinates, Double> longitude;
-	public static volatile SingularAttribute<Coordinates, Integer> id;
-	public static volatile SingularAttribute<Coordinates, Bounds> bounds;
 }
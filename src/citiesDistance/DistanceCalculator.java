@@ -1,23 +1,24 @@
 package citiesDistance;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
-import javax.persistence.Persistence;
-import javax.persistence.Query;
 
 /**
  * This class is responsible for calculating the distance between a point and
  * the bounds of a city and printing a list of the closest cities (10 by
- * default). The search radius and limit parameter in the configuration file
- * allow to modify the behavior of this class.
+ * default), or the cities whose bounds contain the point. The search radius,
+ * limit and engine parameters in the configuration file allow to modify the
+ * behavior of this class. The jpql engine answers both queries from the
+ * database, while the in-memory engines load the city data once, from a city
+ * snapshot without starting the persistence unit if one is available, and
+ * keep answering while cities are imported. The latency of the queries and of
+ * the lazy loading of the city data, and the result cache counters are kept
+ * in the "query" {@link Metrics}.
  * 
  * @author Rolandas
  *
@@ -28,14 +29,52 @@ public class DistanceCalculator {
 	private Coordinates coordinates;
 	private int searchRadius;
 	private int limit;
-	final int EARTH_RADIUS = 6371; // Earth's mean radius in KM
+	static final String ENGINE_JPQL = "jpql";
+	static final String ENGINE_RTREE = "rtree";
+	static final String ENGINE_SCAN = "scan";
+	private String engineName = ENGINE_JPQL;
+	private DistanceQueryEngine engine;
+	private volatile CityDatasetPublisher publisher;
+	private int resultCacheSize;
+	private int resultCachePrecision = GeohashResultCache.DEFAULT_PRECISION;
+	private volatile GeohashResultCache resultCache;
+	private Path snapshotPath;
+	private boolean indexSynchronized;
+	private final QueryResult consoleResult = new QueryResult();
+
+	static final LatencyHistogram QUERY_TIME = Metrics.histogram("query");
+	private static final LatencyHistogram LOAD_TIME = Metrics.histogram("query.load");
+	static final LatencyHistogram CONTAINING_TIME = Metrics.histogram("query.containing");
 
 	EntityManagerFactory factory;
 	EntityManager entityManager;
+	private SqlStatementCounter statementCounter;
 
 	private DistanceCalculator() {
-		factory = Persistence.createEntityManagerFactory("CitiesDistance");
-		entityManager = factory.createEntityManager();
+		Metrics.gauge("query.cache.hits", () -> {
+			GeohashResultCache cache = resultCache;
+			return cache == null ? 0 : cache.getHits();
+		});
+		Metrics.gauge("query.cache.misses", () -> {
+			GeohashResultCache cache = resultCache;
+			return cache == null ? 0 : cache.getMisses();
+		});
+		Metrics.gauge("query.cache.evictions", () -> {
+			GeohashResultCache cache = resultCache;
+			return cache == null ? 0 : cache.getEvictions();
+		});
+		Metrics.gauge("query.cache.size", () -> {
+			GeohashResultCache cache = resultCache;
+			return cache == null ? 0 : cache.size();
+		});
+		Metrics.gauge("dataset.cities", () -> {
+			CityDatasetPublisher current = publisher;
+			return current == null ? 0 : current.getDataset().size;
+		});
+		Metrics.gauge("dataset.version", () -> {
+			CityDatasetPublisher current = publisher;
+			return current == null ? 0 : current.getVersion();
+		});
 	}
 
 	public static DistanceCalculator getInstance() {
@@ -45,6 +84,20 @@ public class DistanceCalculator {
 		return instance;
 	}
 
+	/**
+	 * Starts the persistence unit on first use
+	 * 
+	 * @return The entity manager of the query engines
+	 */
+	EntityManager getEntityManager() {
+		if (entityManager == null) {
+			factory = CitiesPersistence.getFactory();
+			entityManager = factory.createEntityManager();
+			statementCounter = CitiesPersistence.getStatementCounter();
+		}
+		return entityManager;
+	}
+
 	public Coordinates getCoordinates() {
 		return coordinates;
 	}
@@ -59,121 +112,220 @@ public class DistanceCalculator {
 	}
 
 	/**
-	 * This method uses the database to find and print a list of the closest cities
-	 * to a coordinate or simply print that a coordinate is inside a city's bounds.
+	 * This method prints the cities whose bounds contain a coordinate, or uses
+	 * the configured query engine to find and print a list of the closest cities
+	 * if there are none.
 	 */
+	public void calculateDistance() {
+		double lon = coordinates.getLongitude(); // your longitude
+		double lat = coordinates.getLatitude(); // your latitude
+
+		findContaining(lon, lat, consoleResult);
+		if (consoleResult.size() > 0) {
+			for (int i = 0; i < consoleResult.size(); i++) {
+				System.out.println("Point is inside the bounds of " + consoleResult.getName(i) + "("
+						+ consoleResult.getCountry(i) + ")");
+			}
+			return;
+		}
+
+		findClosest(lon, lat, consoleResult);
+
+		for (int i = 0; i < consoleResult.size(); i++) {
+			System.out.printf("%.4f", consoleResult.getDistance(i));
+			System.out.println(" km. - " + consoleResult.getName(i) + "(" + consoleResult.getCountry(i) + ")");
+		}
+	}
+
 	/**
+	 * Finds the closest cities to a point using the configured search radius and
+	 * limit. With an in-memory engine and a reused result buffer no memory is
+	 * allocated per query.
 	 * 
+	 * @param longitude
+	 * @param latitude
+	 * @param result    Buffer which receives the closest cities
 	 */
+	public void findClosest(double longitude, double latitude, QueryResult result) {
+		DistanceQueryEngine engine = getEngine();
+		long start = QUERY_TIME.start();
+		engine.findClosest(longitude, latitude, searchRadius, limit, result);
+		QUERY_TIME.stop(start);
+	}
+
 	/**
+	 * Finds the cities whose bounds contain a point without running a distance
+	 * query. Overlapping bounds are all returned, the smallest first. The jpql
+	 * engine runs a point query on the R*Tree index, the in-memory engines look
+	 * the point up in the containment index published with their city data.
 	 * 
+	 * @param longitude
+	 * @param latitude
+	 * @param result    Buffer which receives the cities, all with the distance 0
 	 */
-	public void calculateDistance() {
-		double lon = coordinates.getLongitude(); // your longitude
-		double lat = coordinates.getLatitude(); // your latitude
+	public void findContaining(double longitude, double latitude, QueryResult result) {
+		DistanceQueryEngine engine = getEngine();
+		long start = CONTAINING_TIME.start();
+		engine.findContaining(longitude, latitude, result);
+		CONTAINING_TIME.stop(start);
+	}
 
-		String distanceQueryString = "SELECT loc, "
-				+ "(:earthRadius * FUNC('acos', FUNC('cos', FUNC('radians', :latitude)) * "
-				+ "FUNC('cos', FUNC('radians', loc.latitude)) * "
-				+ "FUNC('cos', FUNC('radians', loc.longitude) - FUNC('radians', :longitude)) + "
-				+ "FUNC('sin', FUNC('radians', :latitude)) * FUNC('sin', FUNC('radians', loc.latitude)) ) ) AS distance "
-				+ "FROM Location loc "
-				+ "WHERE ((:earthRadius * FUNC('acos', FUNC('cos', FUNC('radians', :latitude)) * "
-				+ "FUNC('cos', FUNC('radians', loc.latitude)) * "
-				+ "FUNC('cos', FUNC('radians', loc.longitude) - FUNC('radians', :longitude)) + "
-				+ "FUNC('sin', FUNC('radians', :latitude)) * FUNC('sin', FUNC('radians', loc.latitude)) ) )<= :searchRadius) "
-				+ "ORDER BY distance";
-
-		Query query = entityManager.createQuery(distanceQueryString);
-		query.setParameter("latitude", lat);
-		query.setParameter("longitude", lon);
-		query.setParameter("searchRadius", searchRadius);
-		query.setParameter("earthRadius", EARTH_RADIUS);
-		query.setMaxResults(limit);
-
-		@SuppressWarnings("unchecked")
-		List<Object[]> rows = query.getResultList();
-		List<Location> sortedLocations = new ArrayList<>(rows.size());
-		for (Object[] row : rows) {
-			sortedLocations.add((Location) row[0]);
+	/**
+	 * Creates the query engine on first use. The in-memory engines load the city
+	 * data from the database only once.
+	 * 
+	 * @return The query engine selected with {@link #setEngineName(String)}
+	 */
+	DistanceQueryEngine getEngine() {
+		if (engine == null) {
+			switch (engineName) {
+			case ENGINE_RTREE:
+			case ENGINE_SCAN:
+				engine = getPublisher();
+				if (resultCacheSize > 0) {
+					resultCache = new GeohashResultCache(getPublisher(), resultCacheSize, resultCachePrecision);
+					engine = resultCache;
+				}
+				break;
+			case ENGINE_JPQL:
+				if (resultCacheSize > 0) {
+					System.out.println("The result cache is only used by the in-memory query engines.");
+				}
+				synchronizeIndex();
+				engine = new JpqlQueryEngine(getEntityManager(), statementCounter);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown query engine: " + engineName);
+			}
 		}
+		return engine;
+	}
 
-		City city;
-		Map<City, Double> unsortedMap = new HashMap<>();
+	/**
+	 * Creates a query engine for a worker thread of the query server. The
+	 * in-memory engines are immutable and shared by all threads, while every
+	 * thread gets its own jpql engine with its own entity manager.
+	 * 
+	 * @return Query engine which may only be used by the calling thread
+	 */
+	synchronized DistanceQueryEngine createThreadEngine() {
+		if (!ENGINE_JPQL.equals(engineName)) {
+			return getEngine();
+		}
+		synchronizeIndex();
+		return new JpqlQueryEngine(CitiesPersistence.getFactory().createEntityManager(),
+				CitiesPersistence.getStatementCounter());
+	}
 
-		for (Location entity : sortedLocations) {
-			city = entity.getCity();
-			double distance = getDistanceFromBounds(new Coordinates(lat, lon), city.getBounds());
-			unsortedMap.put(city, distance);
+	/**
+	 * Brings the R*Tree index of the city bounds in sync with the database once
+	 */
+	private void synchronizeIndex() {
+		if (!indexSynchronized) {
+			long start = LOAD_TIME.start();
+			EntityManager entityManager = getEntityManager();
+			entityManager.getTransaction().begin();
+			CityBoundsIndex.synchronize(entityManager);
+			entityManager.getTransaction().commit();
+			indexSynchronized = true;
+			LOAD_TIME.stop(start);
 		}
+	}
 
-		Map<City, Double> sortedMap = unsortedMap.entrySet().stream().sorted(Entry.comparingByValue())
-				.collect(Collectors.toMap(Entry::getKey, Entry::getValue, (e1, e2) -> e1, LinkedHashMap::new));
+	/**
+	 * @return The currently published city data of the in-memory engines
+	 */
+	CityDataset getDataset() {
+		return getPublisher().getDataset();
+	}
 
-		for (Map.Entry<City, Double> entry : sortedMap.entrySet()) {
-			if (entry.getValue() == 0.0) {
-				System.out.println("Point is inside the bounds of " + entry.getKey().getName() + "("
-						+ entry.getKey().getCountry() + ")");
-				break;
-			} else {
-				System.out.printf("%.4f", entry.getValue());
-				System.out.println(" km. - " + entry.getKey().getName() + "(" + entry.getKey().getCountry() + ")");
+	/**
+	 * Loads the in-memory copy of the city data on first use. It is read from the
+	 * snapshot file if one is set and exists, otherwise from the database.
+	 * 
+	 * @return Publisher of the city data shared by the in-memory engines
+	 */
+	synchronized CityDatasetPublisher getPublisher() {
+		if (publisher != null) {
+			return publisher;
+		}
+		long start = LOAD_TIME.start();
+		CityDataset dataset = null;
+		if (snapshotPath != null && Files.exists(snapshotPath)) {
+			try {
+				dataset = CitySnapshot.read(snapshotPath);
+			} catch (IOException e) {
+				e.printStackTrace();
+				System.out.println("Error while reading the city snapshot. Loading the cities from the database.");
 			}
 		}
+		if (dataset == null) {
+			dataset = CityDataset.load(getEntityManager());
+		}
+		publisher = new CityDatasetPublisher(dataset,
+				ENGINE_SCAN.equals(engineName) ? ScanQueryEngine::new : RTreeQueryEngine::new);
+		LOAD_TIME.stop(start);
+		return publisher;
 	}
 
 	/**
-	 * @param point  Coordinates to be used to calculate the distance to the City
-	 *               bounds
-	 * @param bounds Bounds of a city
-	 * @return Returns 0 if the point is inside City bounds
+	 * Publishes a committed chunk of imported cities to the in-memory engines. It
+	 * does nothing until their city data is loaded, as it is then loaded with the
+	 * imported cities. The result cache is cleared.
+	 * 
+	 * @param chunk Cities saved in one transaction
 	 */
-	double getDistanceFromBounds(Coordinates point, Bounds bounds) {
-		double closestLon, closestLat;
-		if (point.getX() < bounds.getSouthWest().getX()) {
-			closestLon = bounds.getSouthWest().getX();
-			if (point.getY() < bounds.getSouthWest().getY()) {
-				closestLat = bounds.getSouthWest().getY();
-			} else if (point.getY() > bounds.getNorthEast().getY()) {
-				closestLat = bounds.getNorthEast().getY();
-			} else {
-				closestLat = point.getY();
-			}
-		} else if (point.getX() > bounds.getNorthEast().getX()) {
-			closestLon = bounds.getNorthEast().getX();
-			if (point.getY() < bounds.getSouthWest().getY()) {
-				closestLat = bounds.getSouthWest().getY();
-			} else if (point.getY() > bounds.getNorthEast().getY()) {
-				closestLat = bounds.getNorthEast().getY();
-			} else {
-				closestLat = point.getY();
-			}
-		} else {
-			closestLon = point.getX();
-			if (point.getY() < bounds.getSouthWest().getY()) {
-				closestLat = bounds.getSouthWest().getY();
-			} else if (point.getY() > bounds.getNorthEast().getY()) {
-				closestLat = bounds.getNorthEast().getY();
-			} else {
-				return 0.0; // return 0 if the point is inside the bounding rectangle
-			}
+	public void addImportedCities(List<City> chunk) {
+		CityDatasetPublisher current;
+		GeohashResultCache cache;
+		synchronized (this) {
+			current = publisher;
+			cache = resultCache;
+		}
+		if (current != null) {
+			current.append(chunk);
 		}
+		if (cache != null) {
+			cache.invalidate();
+		}
+	}
 
-		double latRad = Math.toRadians(point.getLatitude());
-		double closestLatRad = Math.toRadians(closestLat);
-		double lonRad = Math.toRadians(point.getLongitude());
-		double closestLonRad = Math.toRadians(closestLon);
+	/**
+	 * Writes the cities currently in the database to a snapshot file, which the
+	 * in-memory engines can load without the database
+	 * 
+	 * @param path Snapshot file
+	 * @throws IOException
+	 */
+	public void exportSnapshot(Path path) throws IOException {
+		CitySnapshot.write(CityDataset.load(getEntityManager()), path);
+	}
 
-		double diffLat = closestLatRad - latRad;
-		double diffLon = closestLonRad - lonRad;
+	/**
+	 * @return Counter of the SQL statements sent by the query engines
+	 */
+	public SqlStatementCounter getStatementCounter() {
+		getEntityManager();
+		return statementCounter;
+	}
 
-		// Haversine formula
-		double a = Math.pow(Math.sin(diffLat / 2), 2)
-				+ Math.cos(latRad) * Math.cos(closestLatRad) * Math.pow(Math.sin(diffLon / 2), 2);
+	/**
+	 * @return Distance matrix calculator over all cities in the database
+	 */
+	public DistanceMatrix getDistanceMatrix() {
+		return new DistanceMatrix(getDataset());
+	}
 
-		double c = 2 * Math.asin(Math.sqrt(a));
-		double distance = EARTH_RADIUS * c;
-		return distance;
+	/**
+	 * @param point  Coordinates to be used to calculate the distance to the City
+	 *               bounds
+	 * @param bounds Bounds of a city
+	 * @return Returns 0 if the point is inside City bounds
+	 */
+	static double getDistanceFromBounds(Coordinates point, Bounds bounds) {
+		return GeoUtils.distanceFromBounds(point.getLatitude(), point.getLongitude(),
+				bounds.getSouthWest().getLatitude(), bounds.getSouthWest().getLongitude(),
+				bounds.getNorthEast().getLatitude(), bounds.getNorthEast().getLongitude());
 	}
 
 	public int getSearchRadius() {
@@ -192,4 +344,74 @@ public class DistanceCalculator {
 		this.limit = limit;
 	}
 
+	public Path getSnapshotPath() {
+		return snapshotPath;
+	}
+
+	/**
+	 * @param snapshotPath Snapshot file of the in-memory engines, null to always
+	 *                     load the cities from the database
+	 */
+	public synchronized void setSnapshotPath(Path snapshotPath) {
+		this.snapshotPath = snapshotPath;
+		this.publisher = null;
+		if (!ENGINE_JPQL.equals(engineName)) {
+			this.engine = null;
+		}
+	}
+
+	/**
+	 * @return Result cache of the in-memory engine, null if it is disabled or
+	 *         the engine isn't created yet
+	 */
+	public GeohashResultCache getResultCache() {
+		return resultCache;
+	}
+
+	public int getResultCacheSize() {
+		return resultCacheSize;
+	}
+
+	/**
+	 * @param resultCacheSize Maximum number of cached geohash cells, 0 to disable
+	 *                        the result cache
+	 */
+	public void setResultCacheSize(int resultCacheSize) {
+		this.resultCacheSize = resultCacheSize;
+		resetCache();
+	}
+
+	public int getResultCachePrecision() {
+		return resultCachePrecision;
+	}
+
+	/**
+	 * @param resultCachePrecision Geohash precision of the cached cells
+	 */
+	public void setResultCachePrecision(int resultCachePrecision) {
+		this.resultCachePrecision = resultCachePrecision;
+		resetCache();
+	}
+
+	private void resetCache() {
+		resultCache = null;
+		if (!ENGINE_JPQL.equals(engineName)) {
+			engine = null;
+		}
+	}
+
+	public String getEngineName() {
+		return engineName;
+	}
+
+	public synchronized void setEngineName(String engineName) {
+		if (!engineName.equals(this.engineName)) {
+			this.engineName = engineName;
+			this.engine = null;
+			this.resultCache = null;
+			// The published engines are built for the former engine
+			this.publisher = null;
+		}
+	}
+
 }
@@ -0,0 +1,140 @@
+package citiesDistance;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculates the distance from the bounds of every city for a batch of points.
+ * The work is split into tiles of points and cities, so the bounds of one city
+ * tile stay in the CPU cache while all points of the tile are processed, and
+ * the point tiles are spread over all cores with fork/join. All distances are
+ * kept in primitive arrays.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class DistanceMatrix {
+	static final int POINT_TILE = 32;
+	static final int CITY_TILE = 1024;
+
+	/**
+	 * Receives one row of the distance matrix. It is called concurrently from the
+	 * worker threads and the row array is reused once the call returns, as every
+	 * worker thread calculates its tiles in the same buffer.
+	 */
+	public interface RowConsumer {
+		void accept(int point, double[] distances);
+	}
+
+	private final CityDataset cities;
+	private final ForkJoinPool pool;
+
+	public DistanceMatrix(CityDataset cities) {
+		this(cities, ForkJoinPool.commonPool());
+	}
+
+	public DistanceMatrix(CityDataset cities, ForkJoinPool pool) {
+		this.cities = cities;
+		this.pool = pool;
+	}
+
+	/**
+	 * Calculates the full distance matrix. Row i contains the distances of point
+	 * i, column j the distances from the bounds of city j in the dataset.
+	 *
+	 * @param longitudes
+	 * @param latitudes
+	 * @return Matrix of distances in km, 0 where the point is inside the bounds
+	 */
+	public double[][] compute(double[] longitudes, double[] latitudes) {
+		checkPoints(longitudes, latitudes);
+		double[][] matrix = new double[latitudes.length][cities.size];
+		pool.invoke(new TileTask(longitudes, latitudes, 0, latitudes.length, matrix, null, null));
+		return matrix;
+	}
+
+	/**
+	 * Calculates the distance matrix row by row without keeping it in memory, which
+	 * allows matrices larger than the heap. The rows aren't delivered in order.
+	 *
+	 * @param longitudes
+	 * @param latitudes
+	 * @param consumer   Receives every calculated row
+	 */
+	public void forEachRow(double[] longitudes, double[] latitudes, RowConsumer consumer) {
+		checkPoints(longitudes, latitudes);
+		// Allocated once per worker thread of this call
+		ThreadLocal<double[][]> buffers = ThreadLocal.withInitial(() -> new double[POINT_TILE][cities.size]);
+		pool.invoke(new TileTask(longitudes, latitudes, 0, latitudes.length, null, consumer, buffers));
+	}
+
+	private static void checkPoints(double[] longitudes, double[] latitudes) {
+		if (longitudes.length != latitudes.length) {
+			throw new IllegalArgumentException(
+					"Got " + longitudes.length + " longitudes and " + latitudes.length + " latitudes");
+		}
+	}
+
+	/**
+	 * Splits the point range in halves until it fits into one point tile
+	 */
+	private class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final double[] longitudes;
+		private final double[] latitudes;
+		private final int from;
+		private final int to;
+		private final double[][] matrix;
+		private final RowConsumer consumer;
+		private final ThreadLocal<double[][]> buffers;
+
+		TileTask(double[] longitudes, double[] latitudes, int from, int to, double[][] matrix,
+				RowConsumer consumer, ThreadLocal<double[][]> buffers) {
+			this.longitudes = longitudes;
+			this.latitudes = latitudes;
+			this.from = from;
+			this.to = to;
+			this.matrix = matrix;
+			this.consumer = consumer;
+			this.buffers = buffers;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > POINT_TILE) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new TileTask(longitudes, latitudes, from, middle, matrix, consumer, buffers),
+						new TileTask(longitudes, latitudes, middle, to, matrix, consumer, buffers));
+				return;
+			}
+
+			double[][] rows = matrix;
+			int rowOffset = 0;
+			if (rows == null) {
+				rows = buffers.get();
+				rowOffset = from;
+			}
+
+			for (int cityFrom = 0; cityFrom < cities.size; cityFrom += CITY_TILE) {
+				int cityTo = Math.min(cityFrom + CITY_TILE, cities.size);
+				for (int point = from; point < to; point++) {
+					double lat = latitudes[point];
+					double lon = longitudes[point];
+					double[] row = rows[point - rowOffset];
+					for (int city = cityFrom; city < cityTo; city++) {
+						row[city] = GeoUtils.distanceFromBounds(lat, lon, cities.swLat[city], cities.swLon[city],
+								cities.neLat[city], cities.neLon[city]);
+					}
+				}
+			}
+
+			if (consumer != null) {
+				for (int point = from; point < to; point++) {
+					consumer.accept(point, rows[point - from]);
+				}
+			}
+		}
+	}
+}
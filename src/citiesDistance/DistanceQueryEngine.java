@@ -0,0 +1,36 @@
+package citiesDistance;
+
+/**
+ * Strategy used by {@link DistanceCalculator} to find the cities closest to a
+ * point and the cities whose bounds contain it. The engine is selected with
+ * the "engine" parameter of the configuration file. An engine isn't
+ * thread-safe unless the implementation states otherwise.
+ * 
+ * @author Rolandas
+ *
+ */
+
+public interface DistanceQueryEngine {
+
+	/**
+	 * Finds the closest cities within the search radius
+	 * 
+	 * @param longitude
+	 * @param latitude
+	 * @param searchRadius Search radius in km
+	 * @param limit        Maximum number of cities to return
+	 * @param result       Cleared and filled with the cities sorted by the
+	 *                     distance from their bounds, closest first
+	 */
+	void findClosest(double longitude, double latitude, int searchRadius, int limit, QueryResult result);
+
+	/**
+	 * Finds the cities whose bounds contain the point without a distance query.
+	 * Overlapping bounds are all returned, the smallest first.
+	 * 
+	 * @param longitude
+	 * @param latitude
+	 * @param result    Cleared and filled with the cities at the distance 0
+	 */
+	void findContaining(double longitude, double latitude, QueryResult result);
+}
@@ -0,0 +1,325 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Imports the cities of a local gazetteer dump without the geocoding service,
+ * so no network access or API key is needed. The file is a tab separated
+ * GeoNames dump (such as allCountries.txt or cities15000.txt), optionally
+ * with four more columns with the bounds of every place: south, west, north
+ * and east. Only the populated places (feature class P) are imported. Without
+ * the bounds columns, the bounds are estimated as a square around the centre
+ * sized by the population.
+ *
+ * The rows are written with plain JDBC batches into the CITY table, committing
+ * a transaction every chunkSize cities. The name and country index is dropped
+ * during the import and built again at its end. The ids are allocated from the
+ * same SEQUENCE row as the persistence unit, so the cities imported later
+ * through it don't collide with them. The places already imported by their
+ * GeoNames id are skipped, so an interrupted import can simply run again.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class GazetteerImport {
+	static final int DEFAULT_CHUNK_SIZE = 50000;
+	static final String PLACE_ID_PREFIX = "geonames:";
+
+	// Columns of the GeoNames dump
+	private static final int GEONAME_ID = 0;
+	private static final int NAME = 1;
+	private static final int LATITUDE = 4;
+	private static final int LONGITUDE = 5;
+	private static final int FEATURE_CLASS = 6;
+	private static final int COUNTRY_CODE = 8;
+	private static final int POPULATION = 14;
+	private static final int COLUMNS = 19;
+	// Optional bounds columns after the GeoNames ones
+	private static final int SOUTH = 19;
+	private static final int WEST = 20;
+	private static final int NORTH = 21;
+	private static final int EAST = 22;
+
+	private static final String POPULATED_PLACE = "P";
+	// Density and minimal half size of the estimated bounds
+	private static final double PEOPLE_PER_KM2 = 2000;
+	private static final double MIN_HALF_SIZE_KM = 1;
+	private static final double KM_PER_DEGREE = Math.PI * GeoUtils.EARTH_RADIUS / 180;
+
+	private static final Metrics.Counter ROWS_READ = Metrics.counter("import.rows.read");
+	private static final Metrics.Counter ROWS_SKIPPED = Metrics.counter("import.rows.skipped");
+	private static final Metrics.Counter CITIES_PERSISTED = Metrics.counter("import.cities.persisted");
+	private static final LatencyHistogram PERSIST_TIME = Metrics.histogram("import.persist");
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private Consumer<List<City>> persistListener;
+	private boolean indexBounds = true;
+	private int importedCities;
+	private int skippedRows;
+
+	// English names of the ISO country codes
+	private final Map<String, String> countries = new HashMap<>();
+
+	/**
+	 * Imports the populated places of a gazetteer dump which aren't in the
+	 * database yet
+	 *
+	 * @param path Tab separated GeoNames dump
+	 * @return Number of imported cities
+	 * @throws IOException
+	 * @throws SQLException
+	 */
+	public int importFile(Path path) throws IOException, SQLException {
+		importedCities = 0;
+		skippedRows = 0;
+		// Creates the tables and the sequence row if the database is new
+		CitiesPersistence.getFactory();
+
+		try (Connection connection = CitiesPersistence.openConnection();
+				CityCsvReader reader = new CityCsvReader(path, '\t');
+				Statement statement = connection.createStatement()) {
+			connection.setAutoCommit(false);
+			int nextId = reserveIds(connection);
+			Set<String> existing = loadPlaceIds(connection);
+			statement.executeUpdate(CityBoundsIndex.CREATE_TABLE);
+			// Building the index once after the inserts is much faster than updating
+			// it on every insert
+			statement.executeUpdate("DROP INDEX IF EXISTS " + City.NAME_COUNTRY_INDEX);
+
+			try (PreparedStatement insertCity = connection.prepareStatement("INSERT INTO CITY (ID, PLACEID, NAME,"
+					+ " COUNTRY, LATITUDE, LONGITUDE, SW_LATITUDE, SW_LONGITUDE, NE_LATITUDE, NE_LONGITUDE)"
+					+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+					PreparedStatement insertBounds = connection.prepareStatement("INSERT OR REPLACE INTO "
+							+ CityBoundsIndex.TABLE + " " + CityBoundsIndex.SELECT_BOUNDS + " WHERE ID BETWEEN ? AND ?");
+					PreparedStatement updateSequence = connection.prepareStatement(
+							"UPDATE SEQUENCE SET SEQ_COUNT = ? WHERE SEQ_NAME = '" + City.ID_GENERATOR + "'")) {
+				List<City> chunk = new ArrayList<>();
+				int chunkCities = 0;
+				long start = PERSIST_TIME.start();
+				while (reader.next()) {
+					ROWS_READ.increment();
+					City city = parseRow(reader);
+					if (city == null || !existing.add(city.getPlaceId())) {
+						skippedRows++;
+						ROWS_SKIPPED.increment();
+						continue;
+					}
+					city.setId(nextId++);
+					addBatch(insertCity, city);
+					if (persistListener != null) {
+						chunk.add(city);
+					}
+					if (++chunkCities == chunkSize) {
+						commit(connection, insertCity, insertBounds, updateSequence, nextId - chunkCities, nextId - 1,
+								chunk);
+						PERSIST_TIME.stop(start);
+						chunkCities = 0;
+						chunk = new ArrayList<>();
+						start = PERSIST_TIME.start();
+					}
+				}
+				if (chunkCities > 0) {
+					commit(connection, insertCity, insertBounds, updateSequence, nextId - chunkCities, nextId - 1,
+							chunk);
+					PERSIST_TIME.stop(start);
+				}
+			} catch (SQLException | IOException | RuntimeException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				// Also restores the index dropped with a chunk which was committed
+				statement.executeUpdate(City.CREATE_NAME_COUNTRY_INDEX);
+				connection.commit();
+			}
+		}
+		return importedCities;
+	}
+
+	/**
+	 * @return The GeoNames place ids of the cities already in the database
+	 */
+	private static Set<String> loadPlaceIds(Connection connection) throws SQLException {
+		Set<String> placeIds = new HashSet<>();
+		try (Statement statement = connection.createStatement();
+				ResultSet rows = statement
+						.executeQuery("SELECT PLACEID FROM CITY WHERE PLACEID LIKE '" + PLACE_ID_PREFIX + "%'")) {
+			while (rows.next()) {
+				placeIds.add(rows.getString(1));
+			}
+		}
+		return placeIds;
+	}
+
+	/**
+	 * Finds the first id which the persistence unit hasn't allocated. The write
+	 * transaction started by the sequence row insert keeps it from allocating
+	 * more until the first chunk is committed with the updated sequence.
+	 *
+	 * @return First free id
+	 */
+	private static int reserveIds(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate("INSERT OR IGNORE INTO SEQUENCE (SEQ_NAME, SEQ_COUNT) VALUES ('"
+					+ City.ID_GENERATOR + "', 0)");
+			try (ResultSet rows = statement.executeQuery("SELECT MAX((SELECT SEQ_COUNT FROM SEQUENCE WHERE SEQ_NAME = '"
+					+ City.ID_GENERATOR + "'), (SELECT IFNULL(MAX(ID), 0) FROM CITY))")) {
+				rows.next();
+				return rows.getInt(1) + 1;
+			}
+		}
+	}
+
+	/**
+	 * @return The city of a populated place row, null if the row isn't one or
+	 *         isn't valid
+	 */
+	private City parseRow(CityCsvReader reader) {
+		if (reader.getFieldCount() < COLUMNS || !POPULATED_PLACE.equals(reader.getField(FEATURE_CLASS))) {
+			return null;
+		}
+		try {
+			double latitude = Double.parseDouble(reader.getField(LATITUDE));
+			double longitude = Double.parseDouble(reader.getField(LONGITUDE));
+			Coordinates southWest;
+			Coordinates northEast;
+			if (reader.getFieldCount() > EAST && !reader.getField(EAST).isEmpty()) {
+				southWest = new Coordinates(Double.parseDouble(reader.getField(SOUTH)),
+						Double.parseDouble(reader.getField(WEST)));
+				northEast = new Coordinates(Double.parseDouble(reader.getField(NORTH)),
+						Double.parseDouble(reader.getField(EAST)));
+			} else {
+				String population = reader.getField(POPULATION);
+				double halfSize = Math.max(MIN_HALF_SIZE_KM,
+						Math.sqrt((population.isEmpty() ? 0 : Long.parseLong(population)) / PEOPLE_PER_KM2) / 2);
+				double latitudeDelta = halfSize / KM_PER_DEGREE;
+				double longitudeDelta = halfSize / (KM_PER_DEGREE * Math.max(Math.cos(Math.toRadians(latitude)), 0.01));
+				southWest = new Coordinates(latitude - latitudeDelta, longitude - longitudeDelta);
+				northEast = new Coordinates(latitude + latitudeDelta, longitude + longitudeDelta);
+			}
+			return new City(PLACE_ID_PREFIX + reader.getField(GEONAME_ID), reader.getField(NAME),
+					countryName(reader.getField(COUNTRY_CODE)), new Bounds(northEast, southWest),
+					new Location(latitude, longitude));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return English name of the country, as in the import CSV, or the code if
+	 *         it isn't known
+	 */
+	private String countryName(String code) {
+		return countries.computeIfAbsent(code, key -> {
+			String name = new Locale("", key).getDisplayCountry(Locale.ENGLISH);
+			return name.isEmpty() ? key : name;
+		});
+	}
+
+	private static void addBatch(PreparedStatement insertCity, City city) throws SQLException {
+		Bounds bounds = city.getBounds();
+		Location location = city.getLocation();
+		insertCity.setInt(1, city.getId());
+		insertCity.setString(2, city.getPlaceId());
+		insertCity.setString(3, city.getName());
+		insertCity.setString(4, city.getCountry());
+		insertCity.setDouble(5, location.getLatitude());
+		insertCity.setDouble(6, location.getLongitude());
+		insertCity.setDouble(7, bounds.getSouthWest().getLatitude());
+		insertCity.setDouble(8, bounds.getSouthWest().getLongitude());
+		insertCity.setDouble(9, bounds.getNorthEast().getLatitude());
+		insertCity.setDouble(10, bounds.getNorthEast().getLongitude());
+		insertCity.addBatch();
+	}
+
+	/**
+	 * Writes the batched chunk together with the last allocated id and passes it
+	 * to the persist listener once it is committed. The bounds of the chunk are
+	 * added to the R*Tree index in the same transaction if it is enabled.
+	 */
+	private void commit(Connection connection, PreparedStatement insertCity, PreparedStatement insertBounds,
+			PreparedStatement updateSequence, int firstId, int lastId, List<City> chunk) throws SQLException {
+		insertCity.executeBatch();
+		if (indexBounds) {
+			insertBounds.setInt(1, firstId);
+			insertBounds.setInt(2, lastId);
+			insertBounds.executeUpdate();
+		}
+		updateSequence.setInt(1, lastId);
+		updateSequence.executeUpdate();
+		connection.commit();
+		int cities = lastId - firstId + 1;
+		importedCities += cities;
+		CITIES_PERSISTED.add(cities);
+		if (persistListener != null) {
+			persistListener.accept(chunk);
+		}
+	}
+
+	/**
+	 * @return Number of cities imported by the last import
+	 */
+	public int getImportedCities() {
+		return importedCities;
+	}
+
+	/**
+	 * @return Number of rows which weren't imported by the last import, as they
+	 *         aren't valid populated places or are already in the database
+	 */
+	public int getSkippedRows() {
+		return skippedRows;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * @param chunkSize Number of cities saved to the database in one transaction
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public boolean isIndexBounds() {
+		return indexBounds;
+	}
+
+	/**
+	 * @param indexBounds Add the bounds to the R*Tree index during the import. It
+	 *                    is only read by the jpql engine, which otherwise adds the
+	 *                    missing bounds on its first query, as the inserts into
+	 *                    the R*Tree take several times longer than the rest of the
+	 *                    import.
+	 */
+	public void setIndexBounds(boolean indexBounds) {
+		this.indexBounds = indexBounds;
+	}
+
+	public Consumer<List<City>> getPersistListener() {
+		return persistListener;
+	}
+
+	/**
+	 * @param persistListener Called with the cities of every committed chunk, null
+	 *                        for none
+	 */
+	public void setPersistListener(Consumer<List<City>> persistListener) {
+		this.persistListener = persistListener;
+	}
+}
@@ -0,0 +1,117 @@
+package citiesDistance;
+
+/**
+ * Spherical geometry helpers shared by the distance query engines. All
+ * coordinates are in degrees and all distances are in kilometres.
+ *
+ * @author Rolandas
+ *
+ */
+
+public final class GeoUtils {
+	static final int EARTH_RADIUS = 6371; // Earth's mean radius in KM
+
+	private GeoUtils() {
+	}
+
+	/**
+	 * Great-circle distance between two points using the Haversine formula
+	 *
+	 * @return Distance in kilometres
+	 */
+	static double haversine(double lat1, double lon1, double lat2, double lon2) {
+		double lat1Rad = Math.toRadians(lat1);
+		double lat2Rad = Math.toRadians(lat2);
+		double sinLat = Math.sin((lat2Rad - lat1Rad) / 2);
+		double sinLon = Math.sin((Math.toRadians(lon2) - Math.toRadians(lon1)) / 2);
+
+		double a = sinLat * sinLat + Math.cos(lat1Rad) * Math.cos(lat2Rad) * sinLon * sinLon;
+		return EARTH_RADIUS * 2 * Math.asin(Math.sqrt(a));
+	}
+
+	/**
+	 * Distance from a point to the closest point of a rectangular city bounds.
+	 * This is the primitive counterpart of
+	 * {@link DistanceCalculator#getDistanceFromBounds(Coordinates, Bounds)}.
+	 *
+	 * @return Returns 0 if the point is inside the bounds
+	 */
+	static double distanceFromBounds(double lat, double lon, double swLat, double swLon, double neLat,
+			double neLon) {
+		double closestLon = lon < swLon ? swLon : (lon > neLon ? neLon : lon);
+		double closestLat = lat < swLat ? swLat : (lat > neLat ? neLat : lat);
+		if (closestLon == lon && closestLat == lat) {
+			return 0.0; // return 0 if the point is inside the bounding rectangle
+		}
+		return haversine(lat, lon, closestLat, closestLon);
+	}
+
+	/**
+	 * Lower bound of {@link #distanceFromBounds} for every rectangle contained in
+	 * the specified rectangle. The latitude and longitude gaps of any inner
+	 * rectangle can only be larger, and the cosine of its closest latitude can't
+	 * be smaller than the minimum cosine over the outer latitude range. A
+	 * longitude gap over 180 degrees brings the points closer again, so then the
+	 * farthest longitude of the rectangle can give the smallest distance.
+	 *
+	 * @return Lower bound of the distance in kilometres
+	 */
+	static double lowerBound(double lat, double lon, double minLat, double minLon, double maxLat, double maxLon) {
+		double diffLon = lon < minLon ? minLon - lon : (lon > maxLon ? lon - maxLon : 0.0);
+		double diffLat = lat < minLat ? minLat - lat : (lat > maxLat ? lat - maxLat : 0.0);
+		if (diffLon == 0.0 && diffLat == 0.0) {
+			return 0.0;
+		}
+		double minCos = Math.min(Math.cos(Math.toRadians(minLat)), Math.cos(Math.toRadians(maxLat)));
+		double sinLat = Math.sin(Math.toRadians(diffLat) / 2);
+		double sinLon = Math.sin(Math.toRadians(diffLon) / 2);
+		double farLon = lon < minLon ? maxLon - lon : lon - minLon;
+		if (diffLon > 0.0 && farLon > 180) {
+			sinLon = Math.min(sinLon, Math.sin(Math.toRadians(farLon) / 2));
+		}
+
+		double a = sinLat * sinLat + Math.cos(Math.toRadians(lat)) * Math.max(minCos, 0.0) * sinLon * sinLon;
+		return EARTH_RADIUS * 2 * Math.asin(Math.sqrt(Math.min(a, 1.0)));
+	}
+
+	/**
+	 * Calculates the latitude/longitude box which contains every point within the
+	 * specified distance. The whole longitude range is used when the circle
+	 * reaches a pole. The longitudes are wrapped at the antimeridian, so the
+	 * minimum longitude is above the maximum one when the box crosses it, as in
+	 * the bounds of a city crossing it.
+	 *
+	 * @param radius Distance in kilometres
+	 * @return Array of {minLat, minLon, maxLat, maxLon}
+	 */
+	static double[] searchBox(double lat, double lon, double radius) {
+		double angularRadius = radius / EARTH_RADIUS;
+		double diffLat = Math.toDegrees(angularRadius);
+		double minLat = lat - diffLat;
+		double maxLat = lat + diffLat;
+
+		double sinRadius = Math.sin(Math.min(angularRadius, Math.PI / 2));
+		double cosLat = Math.cos(Math.toRadians(lat));
+		if (minLat <= -90 || maxLat >= 90 || angularRadius >= Math.PI / 2 || sinRadius >= cosLat) {
+			return new double[] { Math.max(minLat, -90), -180, Math.min(maxLat, 90), 180 };
+		}
+		double diffLon = Math.toDegrees(Math.asin(sinRadius / cosLat));
+		if (diffLon >= 180) {
+			return new double[] { minLat, -180, maxLat, 180 };
+		}
+		return new double[] { minLat, wrapLongitude(lon - diffLon), maxLat, wrapLongitude(lon + diffLon) };
+	}
+
+	/**
+	 * @return The longitude moved into the range from -180 to 180 degrees
+	 */
+	static double wrapLongitude(double lon) {
+		if (lon < -180) {
+			return lon + 360;
+		}
+		if (lon > 180) {
+			return lon - 360;
+		}
+		return lon;
+	}
+}
@@ -0,0 +1,221 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Persistent on-disk cache of geocode responses. The responses are stored
+ * content-addressed by the SHA-256 of the normalised request (city, country and
+ * whether the country was part of the request), so rebuilding the database
+ * doesn't request the known cities again. Entries expire after the TTL and the
+ * oldest entries are evicted once the cache grows over its size cap.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class GeocodeCache {
+	private static final String EXTENSION = ".xml";
+
+	private final Path directory;
+	private final long ttlMillis;
+	private final long maxBytes;
+	private long totalBytes;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param directory Cache directory, created if it doesn't exist
+	 * @param ttlMillis Time after which an entry expires
+	 * @param maxBytes  Maximum total size of the cached responses
+	 * @throws IOException
+	 */
+	public GeocodeCache(Path directory, long ttlMillis, long maxBytes) throws IOException {
+		this.directory = directory;
+		this.ttlMillis = ttlMillis;
+		this.maxBytes = maxBytes;
+		Files.createDirectories(directory);
+		for (Path file : listEntries()) {
+			totalBytes += Files.size(file);
+		}
+	}
+
+	/**
+	 * Builds the normalised request key. Names are compared case-insensitively and
+	 * with collapsed whitespace.
+	 *
+	 * @param cityName
+	 * @param countryName Country of the request, null for the city-only fallback
+	 * @return The request key
+	 */
+	static String key(String cityName, String countryName) {
+		String variant = countryName == null ? "city" : "city+country";
+		return variant + "|" + normalise(cityName) + "|" + (countryName == null ? "" : normalise(countryName));
+	}
+
+	private static String normalise(String name) {
+		return Normalizer.normalize(name, Normalizer.Form.NFC).trim().replaceAll("\\s+", " ")
+				.toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @param cityName
+	 * @param countryName Country of the request, null for the city-only fallback
+	 * @return The cached response, null if it isn't cached or has expired
+	 */
+	public byte[] get(String cityName, String countryName) {
+		Path file = entryPath(key(cityName, countryName));
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			if (System.currentTimeMillis() - attributes.lastModifiedTime().toMillis() > ttlMillis) {
+				remove(file);
+				misses.incrementAndGet();
+				return null;
+			}
+			byte[] content = Files.readAllBytes(file);
+			hits.incrementAndGet();
+			return content;
+		} catch (IOException e) {
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a response. Only responses with the OK or ZERO_RESULTS status are
+	 * stored, as the other statuses are temporary errors (quota, denied key).
+	 *
+	 * @param cityName
+	 * @param countryName Country of the request, null for the city-only fallback
+	 * @param content     Response XML
+	 */
+	public void put(String cityName, String countryName, byte[] content) {
+		if (!isCacheable(content)) {
+			return;
+		}
+		Path file = entryPath(key(cityName, countryName));
+		try {
+			Files.createDirectories(file.getParent());
+			Path temporary = Files.createTempFile(file.getParent(), "entry", ".tmp");
+			Files.write(temporary, content);
+			long previousSize = Files.exists(file) ? Files.size(file) : 0;
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			synchronized (this) {
+				totalBytes += content.length - previousSize;
+				if (totalBytes > maxBytes) {
+					evict();
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.out.println("Error while caching the response of " + cityName);
+		}
+	}
+
+	private static boolean isCacheable(byte[] content) {
+		String head = head(content);
+		return head.contains("<status>OK</status>") || head.contains("<status>ZERO_RESULTS</status>");
+	}
+
+	/**
+	 * @param content Response XML
+	 * @return If the status of the response means the same request fails again
+	 */
+	static boolean isFinalFailure(byte[] content) {
+		String head = head(content);
+		return head.contains("<status>ZERO_RESULTS</status>") || head.contains("<status>INVALID_REQUEST</status>");
+	}
+
+	private static String head(byte[] content) {
+		return new String(content, 0, Math.min(content.length, 512), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Deletes the oldest entries until the cache is 10% under its size cap, so
+	 * eviction doesn't run on every put
+	 */
+	private void evict() throws IOException {
+		List<Path> entries = listEntries();
+		List<long[]> ages = new ArrayList<>(entries.size());
+		for (int i = 0; i < entries.size(); i++) {
+			ages.add(new long[] { Files.getLastModifiedTime(entries.get(i)).toMillis(), i });
+		}
+		ages.sort((a, b) -> Long.compare(a[0], b[0]));
+
+		long target = maxBytes - maxBytes / 10;
+		for (long[] age : ages) {
+			if (totalBytes <= target) {
+				break;
+			}
+			remove(entries.get((int) age[1]));
+		}
+	}
+
+	private synchronized void remove(Path file) {
+		try {
+			long size = Files.size(file);
+			Files.delete(file);
+			totalBytes -= size;
+		} catch (IOException e) {
+			// Already removed by another thread
+		}
+	}
+
+	private List<Path> listEntries() throws IOException {
+		List<Path> entries = new ArrayList<>();
+		try (DirectoryStream<Path> subdirectories = Files.newDirectoryStream(directory)) {
+			for (Path subdirectory : subdirectories) {
+				if (Files.isDirectory(subdirectory)) {
+					try (Stream<Path> files = Files.list(subdirectory)) {
+						files.filter(file -> file.toString().endsWith(EXTENSION)).forEach(entries::add);
+					}
+				}
+			}
+		}
+		return entries;
+	}
+
+	private Path entryPath(String key) {
+		String hash = sha256(key);
+		return directory.resolve(hash.substring(0, 2)).resolve(hash + EXTENSION);
+	}
+
+	private static String sha256(String text) {
+		try {
+			return hex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+}
@@ -0,0 +1,242 @@
+package citiesDistance;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Single-pass StAX parser of the Google Maps API geocode XML response. It reads
+ * the response stream once, extracts the place id, location and bounds (or
+ * viewport) of the first result and enforces the same structural rules as
+ * input/CityResponseSchema.xsd: the element order of the result and its
+ * geometry, the required elements and the numeric coordinates. The parser is
+ * stateless and can be shared between threads.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class GeocodeResponseParser {
+	// Order of the result elements defined by the schema. Any element may follow
+	// the place id.
+	private static final String[] RESULT_ORDER = { "type", "formatted_address", "address_component", "geometry",
+			"partial_match", "place_id" };
+	private static final String[] GEOMETRY_ORDER = { "location", "location_type", "viewport", "bounds" };
+
+	private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
+	}
+
+	/**
+	 * Coordinates of the response, filled while the geometry is parsed
+	 */
+	private static class Geometry {
+		double latitude = Double.NaN, longitude = Double.NaN;
+		double[] viewport, bounds;
+	}
+
+	/**
+	 * Parses the response and creates the City object
+	 *
+	 * @param in          Response stream, read until the end of the document
+	 * @param cityName
+	 * @param countryName
+	 * @return The parsed city
+	 * @throws XMLStreamException If the response isn't well-formed or breaks the
+	 *                            structure defined by the schema
+	 */
+	public City parse(InputStream in, String cityName, String countryName) throws XMLStreamException {
+		XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in, "UTF-8");
+		try {
+			reader.nextTag();
+			expectStart(reader, "GeocodeResponse");
+
+			reader.nextTag();
+			expectStart(reader, "status");
+			reader.getElementText();
+
+			reader.nextTag();
+			expectStart(reader, "result");
+			City city = parseResult(reader, cityName, countryName);
+
+			// Anything may follow the first result
+			while (reader.hasNext()) {
+				reader.next();
+			}
+			return city;
+		} finally {
+			reader.close();
+		}
+	}
+
+	private City parseResult(XMLStreamReader reader, String cityName, String countryName)
+			throws XMLStreamException {
+		String placeId = null;
+		Geometry geometry = null;
+		boolean formattedAddress = false;
+		int position = 0;
+
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = reader.getLocalName();
+			int order = placeId != null ? RESULT_ORDER.length : indexOf(RESULT_ORDER, name);
+			boolean repeatable = order == 0 || order == 2 || order == RESULT_ORDER.length;
+			if (order < 0 || order < position || (order == position && !repeatable)) {
+				throw new XMLStreamException("Unexpected element <" + name + "> in <result>", reader.getLocation());
+			}
+			position = order;
+
+			switch (order) {
+			case 1:
+				formattedAddress = true;
+				reader.getElementText();
+				break;
+			case 3:
+				geometry = parseGeometry(reader);
+				break;
+			case 5:
+				placeId = reader.getElementText();
+				break;
+			default:
+				skipElement(reader);
+			}
+		}
+
+		if (!formattedAddress || geometry == null || placeId == null) {
+			throw new XMLStreamException("<result> must contain <formatted_address>, <geometry> and <place_id>",
+					reader.getLocation());
+		}
+
+		// City XML sometimes has Viewport instead of Bounds so it's important to
+		// account for that
+		double[] box = geometry.bounds != null ? geometry.bounds : geometry.viewport;
+		Coordinates coordSW = new Coordinates(box[0], box[1]);
+		Coordinates coordNE = new Coordinates(box[2], box[3]);
+		Location location = new Location(geometry.latitude, geometry.longitude);
+		return new City(placeId, cityName, countryName, new Bounds(coordNE, coordSW), location);
+	}
+
+	private Geometry parseGeometry(XMLStreamReader reader) throws XMLStreamException {
+		Geometry geometry = new Geometry();
+		int position = -1;
+
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = reader.getLocalName();
+			int order = indexOf(GEOMETRY_ORDER, name);
+			if (order <= position) {
+				throw new XMLStreamException("Unexpected element <" + name + "> in <geometry>", reader.getLocation());
+			}
+			if (position < 2 && order > position + 1) {
+				throw new XMLStreamException("Missing element <" + GEOMETRY_ORDER[position + 1] + "> in <geometry>",
+						reader.getLocation());
+			}
+			position = order;
+
+			switch (order) {
+			case 0:
+				double[] location = parseLatLng(reader);
+				geometry.latitude = location[0];
+				geometry.longitude = location[1];
+				break;
+			case 1:
+				reader.getElementText();
+				break;
+			case 2:
+				geometry.viewport = parseBox(reader);
+				break;
+			default:
+				geometry.bounds = parseBox(reader);
+			}
+		}
+
+		if (position < 2) {
+			throw new XMLStreamException("<geometry> must contain <location>, <location_type> and <viewport>",
+					reader.getLocation());
+		}
+		return geometry;
+	}
+
+	/**
+	 * @return Array of {southWestLat, southWestLng, northEastLat, northEastLng}
+	 */
+	private double[] parseBox(XMLStreamReader reader) throws XMLStreamException {
+		reader.nextTag();
+		expectStart(reader, "southwest");
+		double[] southWest = parseLatLng(reader);
+
+		reader.nextTag();
+		expectStart(reader, "northeast");
+		double[] northEast = parseLatLng(reader);
+
+		reader.nextTag();
+		expectEnd(reader);
+		return new double[] { southWest[0], southWest[1], northEast[0], northEast[1] };
+	}
+
+	/**
+	 * @return Array of {lat, lng}
+	 */
+	private double[] parseLatLng(XMLStreamReader reader) throws XMLStreamException {
+		reader.nextTag();
+		expectStart(reader, "lat");
+		double latitude = parseFloat(reader);
+
+		reader.nextTag();
+		expectStart(reader, "lng");
+		double longitude = parseFloat(reader);
+
+		reader.nextTag();
+		expectEnd(reader);
+		return new double[] { latitude, longitude };
+	}
+
+	private double parseFloat(XMLStreamReader reader) throws XMLStreamException {
+		String text = reader.getElementText().trim();
+		try {
+			return Double.parseDouble(text);
+		} catch (NumberFormatException e) {
+			throw new XMLStreamException("'" + text + "' isn't a valid coordinate", reader.getLocation(), e);
+		}
+	}
+
+	private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	private static void expectStart(XMLStreamReader reader, String name) throws XMLStreamException {
+		if (!reader.isStartElement() || !reader.getLocalName().equals(name)) {
+			throw new XMLStreamException("Expected element <" + name + ">", reader.getLocation());
+		}
+	}
+
+	private static void expectEnd(XMLStreamReader reader) throws XMLStreamException {
+		if (!reader.isEndElement()) {
+			throw new XMLStreamException("Unexpected element <" + reader.getLocalName() + ">", reader.getLocation());
+		}
+	}
+
+	private static int indexOf(String[] names, String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,27 @@
+package citiesDistance;
+
+import java.io.IOException;
+
+/**
+ * Geocoding service used by the import. The import adds the response cache
+ * and the request coalescing around it, see {@link CachedGeocoder} and
+ * {@link CoalescingGeocoder}. Implementations must be safe to call from many
+ * threads.
+ *
+ * @author Rolandas
+ *
+ */
+
+public interface Geocoder {
+	/**
+	 * Requests the geocode XML response of a city
+	 *
+	 * @param cityName
+	 * @param countryName Country restriction of the request, null to search by the
+	 *                    city name only
+	 * @return The XML response, which may be a failure status or invalid
+	 * @throws IOException If the service couldn't answer, so a later request may
+	 *                     succeed
+	 */
+	byte[] geocode(String cityName, String countryName) throws IOException;
+}
@@ -0,0 +1,269 @@
+package citiesDistance;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Result cache of the in-memory query engine for clustered lookups. The points
+ * are quantised to the cells of a geohash grid, and an entry keeps the
+ * candidate cities of a cell for one limit and search radius. The candidates
+ * are the cities which can be among the closest ones for any point of the
+ * cell, so a hit ranks them again by the exact distance from the query point
+ * and returns the same cities as an uncached query.
+ *
+ * The candidates are selected with the distance from the cell centre. The
+ * distance from bounds changes at most twice as fast as the point moves (the
+ * clamped latitude follows the point), so for a point at most r km from the
+ * centre it differs from the centre distance by at most 2r. The closest cities
+ * of the point are therefore within min(D + 4r, radius + 2r) of the centre,
+ * where D is the distance of the limit-th closest city of the centre.
+ *
+ * The least recently used entries are evicted once the cache is full. Entries
+ * of a dataset which was replaced by an import are never returned, and the
+ * cache is cleared whenever imported cities are committed.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class GeohashResultCache implements DistanceQueryEngine {
+	static final int DEFAULT_PRECISION = 7; // Cells of about 150 x 150 m
+	static final int MAX_PRECISION = 12;
+	// Candidates fetched for the centre of a cell, in addition to the limit
+	private static final int EXTRA_CANDIDATES = 64;
+
+	private final CityDatasetPublisher engine;
+	private final int maxEntries;
+	private final int latBits, lonBits;
+	private final double cellHeight, cellWidth;
+	private final Map<CellKey, Candidates> entries;
+	// Reused by every lookup while the lock of the entries is held, so a hit
+	// doesn't allocate a key
+	private final CellKey probe = new CellKey(0, 0, 0);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private static final LatencyHistogram RANK_TIME = Metrics.histogram("query.rank");
+
+	/**
+	 * Cached candidates of a cell
+	 */
+	private static class Candidates {
+		final CityDataset dataset;
+		// Dataset indices, sorted by the distance from the cell centre
+		final int[] candidates;
+
+		Candidates(CityDataset dataset, int[] candidates) {
+			this.dataset = dataset;
+			this.candidates = candidates;
+		}
+	}
+
+	/**
+	 * Key of a cell entry. Only the probe key of the lookups is ever changed,
+	 * the keys stored in the map are new instances.
+	 */
+	private static final class CellKey {
+		long cell;
+		int limit;
+		int searchRadius;
+
+		CellKey(long cell, int limit, int searchRadius) {
+			set(cell, limit, searchRadius);
+		}
+
+		void set(long cell, int limit, int searchRadius) {
+			this.cell = cell;
+			this.limit = limit;
+			this.searchRadius = searchRadius;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof CellKey)) {
+				return false;
+			}
+			CellKey key = (CellKey) other;
+			return cell == key.cell && limit == key.limit && searchRadius == key.searchRadius;
+		}
+
+		@Override
+		public int hashCode() {
+			return (Long.hashCode(cell) * 31 + limit) * 31 + searchRadius;
+		}
+	}
+
+	/**
+	 * @param engine     Engine which answers the queries of the missing cells
+	 * @param maxEntries Maximum number of cached cells
+	 * @param precision  Geohash precision (number of characters) of the cells,
+	 *                   from 1 to 12
+	 */
+	GeohashResultCache(CityDatasetPublisher engine, int maxEntries, int precision) {
+		if (precision < 1 || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("Geohash precision must be between 1 and " + MAX_PRECISION);
+		}
+		this.engine = engine;
+		this.maxEntries = maxEntries;
+		// Geohash characters encode 5 bits, starting with the longitude
+		lonBits = (precision * 5 + 1) / 2;
+		latBits = precision * 5 / 2;
+		cellHeight = 180.0 / (1L << latBits);
+		cellWidth = 360.0 / (1L << lonBits);
+		entries = new LinkedHashMap<CellKey, Candidates>(Math.min(maxEntries, 1 << 16), 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CellKey, Candidates> eldest) {
+				if (size() > GeohashResultCache.this.maxEntries) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	@Override
+	public void findClosest(double longitude, double latitude, int searchRadius, int limit, QueryResult result) {
+		InMemoryQueryEngine published = engine.getPublished();
+		CityDataset dataset = published.getDataset();
+
+		long latCell = Math.min((long) ((latitude + 90) / cellHeight), (1L << latBits) - 1);
+		long lonCell = Math.min((long) ((longitude + 180) / cellWidth), (1L << lonBits) - 1);
+		long cell = latCell << 32 | lonCell;
+
+		Candidates entry;
+		synchronized (entries) {
+			probe.set(cell, limit, searchRadius);
+			entry = entries.get(probe);
+		}
+		if (entry != null && entry.dataset == dataset) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+			entry = findCandidates(published, latCell, lonCell, searchRadius, limit, result);
+			if (entry == null) {
+				// Too many candidates to cache, the cell is answered directly
+				published.findClosest(longitude, latitude, searchRadius, limit, result);
+				return;
+			}
+			synchronized (entries) {
+				entries.put(new CellKey(cell, limit, searchRadius), entry);
+			}
+		}
+		long start = RANK_TIME.start();
+		rank(entry, longitude, latitude, searchRadius, limit, result);
+		RANK_TIME.stop(start);
+	}
+
+	/**
+	 * Containment lookups aren't cached, they are answered by the containment
+	 * index of the published dataset
+	 */
+	@Override
+	public void findContaining(double longitude, double latitude, QueryResult result) {
+		engine.findContaining(longitude, latitude, result);
+	}
+
+	/**
+	 * Queries the cities around the cell centre and keeps the ones which can be
+	 * among the closest cities of a point in the cell
+	 *
+	 * @param scratch Result buffer used for the centre query
+	 * @return The cell entry, null if the candidates didn't fit the query limit
+	 */
+	private Candidates findCandidates(InMemoryQueryEngine published, long latCell, long lonCell, int searchRadius,
+			int limit, QueryResult scratch) {
+		double minLat = latCell * cellHeight - 90;
+		double minLon = lonCell * cellWidth - 180;
+		double centreLat = minLat + cellHeight / 2;
+		double centreLon = minLon + cellWidth / 2;
+		// Length of the path to any point of the cell which goes along the meridian
+		// and then along the widest parallel of the cell, so no shorter than the
+		// great-circle distance
+		double maxLat = minLat + cellHeight;
+		double widestCos = Math.max(Math.cos(Math.toRadians(minLat)), Math.cos(Math.toRadians(maxLat)));
+		if (minLat < 0 && maxLat > 0) {
+			widestCos = 1.0;
+		}
+		double cellRadius = Math.toRadians(cellHeight / 2 + widestCos * cellWidth / 2) * GeoUtils.EARTH_RADIUS;
+		double margin = 2 * cellRadius;
+
+		int fetch = limit + EXTRA_CANDIDATES;
+		published.findClosest(centreLon, centreLat, (int) Math.ceil(searchRadius + margin), fetch, scratch);
+		double threshold = searchRadius + margin;
+		if (scratch.size() >= limit) {
+			threshold = Math.min(threshold, scratch.getDistance(limit - 1) + 2 * margin);
+		}
+		if (scratch.size() == fetch && scratch.getDistance(fetch - 1) <= threshold) {
+			return null;
+		}
+
+		int count = 0;
+		while (count < scratch.size() && scratch.getDistance(count) <= threshold) {
+			count++;
+		}
+		int[] candidates = new int[count];
+		System.arraycopy(scratch.indices, 0, candidates, 0, count);
+		return new Candidates(published.getDataset(), candidates);
+	}
+
+	/**
+	 * Ranks the candidates by the exact distance from the point. The candidates
+	 * are sorted by the distance from the cell centre, which is close to the
+	 * final order, so the insertion sort of the result has little to move.
+	 */
+	private static void rank(Candidates entry, double longitude, double latitude, int searchRadius, int limit,
+			QueryResult result) {
+		CityDataset cities = entry.dataset;
+		result.clear();
+		for (int city : entry.candidates) {
+			double distance = GeoUtils.distanceFromBounds(latitude, longitude, cities.swLat[city],
+					cities.swLon[city], cities.neLat[city], cities.neLon[city]);
+			if (distance <= searchRadius) {
+				result.add(cities.ids[city], cities.names[city], cities.countries[city], distance);
+			}
+		}
+		result.sortByDistance();
+		int size = Math.min(result.size(), limit);
+		for (int i = size; i < result.size(); i++) {
+			result.names[i] = null;
+			result.countries[i] = null;
+		}
+		result.setSize(size);
+	}
+
+	/**
+	 * Removes every cached cell
+	 */
+	public void invalidate() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+}
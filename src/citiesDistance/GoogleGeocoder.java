@@ -0,0 +1,85 @@
+package citiesDistance;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Google Maps geocoding API. It is necessary to have a valid API key for the
+ * requests to work. The base URL can point to a local stub server instead.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class GoogleGeocoder implements Geocoder {
+	static final String DEFAULT_BASE_URL = "https://maps.googleapis.com/maps/api/geocode/xml";
+
+	private static final LatencyHistogram DOWNLOAD_TIME = Metrics.histogram("import.download");
+
+	private final String baseURL;
+	private final String key;
+
+	/**
+	 * @param baseURL Geocoding service URL
+	 * @param key     API key
+	 */
+	public GoogleGeocoder(String baseURL, String key) {
+		this.baseURL = baseURL;
+		this.key = key;
+	}
+
+	@Override
+	public byte[] geocode(String cityName, String countryName) throws IOException {
+		long start = DOWNLOAD_TIME.start();
+		byte[] content = download(buildURL(cityName, countryName));
+		DOWNLOAD_TIME.stop(start);
+		return content;
+	}
+
+	/**
+	 * Builds the request URL
+	 *
+	 * @param cityName
+	 * @param countryName Country restriction of the request, null to search by the
+	 *                    city name only
+	 * @return The request URL
+	 */
+	String buildURL(String cityName, String countryName) {
+		String countryURL = "&components=country:";
+		String keyURL = "&key=";
+
+		if (countryName == null) {
+			return baseURL + "?address=" + cityName + keyURL + key;
+		}
+		return baseURL + "?address=" + cityName + countryURL + countryName + keyURL + key;
+	}
+
+	/**
+	 * Downloads the response body as raw bytes for the parser. The connection
+	 * isn't disconnected, so it is returned to the keep-alive cache and reused by
+	 * the next request.
+	 *
+	 * @param url
+	 * @return The response body
+	 * @throws IOException
+	 */
+	private static byte[] download(String url) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream(8192);
+		HttpURLConnection connection = (HttpURLConnection) new URL(url.replace(" ", "%20")).openConnection();
+		try (InputStream in = connection.getInputStream()) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				content.write(buffer, 0, read);
+			}
+		}
+		return content.toByteArray();
+	}
+
+	public String getBaseURL() {
+		return baseURL;
+	}
+}
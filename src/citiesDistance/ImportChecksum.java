@@ -0,0 +1,104 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Records the SHA-256 checksum of every completely imported CSV file in the
+ * IMPORT_CHECKSUM table, so an unchanged file doesn't have to be imported
+ * again on the next start. The table is accessed with plain JDBC, so the check
+ * doesn't need the persistence unit to be deployed.
+ *
+ * @author Rolandas
+ *
+ */
+
+public final class ImportChecksum {
+	static final String TABLE = "IMPORT_CHECKSUM";
+
+	private ImportChecksum() {
+	}
+
+	/**
+	 * @param csv
+	 * @return SHA-256 of the file content in hexadecimal
+	 * @throws IOException
+	 */
+	public static String compute(Path csv) throws IOException {
+		try (InputStream in = Files.newInputStream(csv)) {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[65536];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+			return GeocodeCache.hex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param csv
+	 * @param checksum Checksum of the current file content
+	 * @return If the file was already imported with the same content
+	 */
+	public static boolean isImported(Path csv, String checksum) {
+		try (Connection connection = CitiesPersistence.openConnection()) {
+			createTable(connection);
+			try (PreparedStatement statement = connection
+					.prepareStatement("SELECT CHECKSUM FROM " + TABLE + " WHERE PATH = ?")) {
+				statement.setString(1, key(csv));
+				try (ResultSet rows = statement.executeQuery()) {
+					return rows.next() && checksum.equals(rows.getString(1));
+				}
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			System.out.println("Error while reading the checksum of the last import.");
+			return false;
+		}
+	}
+
+	/**
+	 * Records the checksum of a completely imported file
+	 *
+	 * @param csv
+	 * @param checksum
+	 */
+	public static void record(Path csv, String checksum) {
+		try (Connection connection = CitiesPersistence.openConnection()) {
+			createTable(connection);
+			try (PreparedStatement statement = connection
+					.prepareStatement("INSERT OR REPLACE INTO " + TABLE + " VALUES (?, ?, ?)")) {
+				statement.setString(1, key(csv));
+				statement.setString(2, checksum);
+				statement.setLong(3, System.currentTimeMillis());
+				statement.executeUpdate();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			System.out.println("Error while saving the checksum of the import.");
+		}
+	}
+
+	private static void createTable(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + TABLE
+					+ " (PATH VARCHAR PRIMARY KEY, CHECKSUM VARCHAR NOT NULL, IMPORTED_AT INTEGER)");
+		}
+	}
+
+	private static String key(Path csv) {
+		return csv.toAbsolutePath().normalize().toString();
+	}
+}
@@ -0,0 +1,370 @@
+package citiesDistance;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Append-only journal of the import of a CSV, which lets an interrupted import
+ * of the same file resume where it stopped. Every line is one record:
+ *
+ * <pre>
+ * C row offset          every row up to row is finished, the CSV continues at offset
+ * P row offset          the city of the row is committed to the database
+ * G row offset city     the row was geocoded, the city isn't committed yet
+ * I row offset          the geocode responses of the row weren't valid
+ * S row offset          the row was skipped (country row or already in the database)
+ * </pre>
+ *
+ * The rows finish out of order, as they are downloaded concurrently, so the
+ * checkpoint only covers the rows up to the first one which isn't finished,
+ * and the rows finished after it keep their own records. A row which failed
+ * with a temporary error gets no record, so it is tried again on resume. The
+ * geocoded cities are journaled with their data, so the cities which were
+ * still waiting for their chunk to be committed don't have to be downloaded
+ * again. The journal is written to the disk whenever a chunk is committed,
+ * and it is rewritten with only the records after the checkpoint when it is
+ * opened and when it grows too large, so a torn last record is dropped. If
+ * the journal can't be written, the import continues without it.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class ImportJournal {
+	private static final String HEADER = "CitiesDistance import journal 1 ";
+	private static final char CHECKPOINT = 'C';
+	private static final char PERSISTED = 'P';
+	private static final char GEOCODED = 'G';
+	private static final char INVALID = 'I';
+	private static final char SKIPPED = 'S';
+	private static final long COMPACT_SIZE = 64L << 20;
+
+	private final Path path;
+	private final String checksum;
+	private FileChannel channel;
+	private Writer out;
+	private long written;
+	private boolean failed;
+
+	// Every row up to the checkpoint row is finished
+	private int checkpointRow;
+	private long checkpointOffset;
+	// Records of the finished rows after the checkpoint
+	private final TreeMap<Integer, String> finished = new TreeMap<>();
+	// Records of the geocoded rows which aren't committed yet
+	private final TreeMap<Integer, String> geocoded = new TreeMap<>();
+
+	private ImportJournal(Path path, String checksum) {
+		this.path = path;
+		this.checksum = checksum;
+	}
+
+	/**
+	 * Opens the journal of a CSV. The records of a former import are kept if it
+	 * imported the same file content, otherwise the journal starts empty.
+	 *
+	 * @param path     Journal file
+	 * @param checksum Checksum of the CSV content
+	 * @return The opened journal
+	 * @throws IOException
+	 */
+	public static ImportJournal open(Path path, String checksum) throws IOException {
+		ImportJournal journal = new ImportJournal(path, checksum);
+		if (Files.exists(path)) {
+			List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+			if (!lines.isEmpty() && lines.get(0).equals(HEADER + checksum)) {
+				for (String line : lines.subList(1, lines.size())) {
+					journal.load(line);
+				}
+			}
+		}
+		journal.compact();
+		return journal;
+	}
+
+	private void load(String line) {
+		String[] fields = line.split(" ", 4);
+		if (fields.length < 3 || fields[0].length() != 1) {
+			// A torn record of an interrupted write
+			return;
+		}
+		int row;
+		long offset;
+		try {
+			row = Integer.parseInt(fields[1]);
+			offset = Long.parseLong(fields[2]);
+		} catch (NumberFormatException e) {
+			return;
+		}
+		char type = fields[0].charAt(0);
+		switch (type) {
+		case CHECKPOINT:
+			// The finished rows may have already moved the checkpoint further
+			if (row > checkpointRow) {
+				checkpointRow = row;
+				checkpointOffset = offset;
+			}
+			break;
+		case GEOCODED:
+			if (fields.length == 4 && parseCity(fields[3]) != null) {
+				geocoded.put(row, line);
+			}
+			break;
+		case PERSISTED:
+		case INVALID:
+		case SKIPPED:
+			// A geocoded row may be finished later, also by being skipped
+			geocoded.remove(row);
+			finished.put(row, line);
+			break;
+		default:
+			break;
+		}
+		advanceCheckpoint();
+	}
+
+	/**
+	 * @return Row up to which the former import finished every row, 0 if the
+	 *         import starts from the beginning
+	 */
+	public synchronized int getCheckpointRow() {
+		return checkpointRow;
+	}
+
+	/**
+	 * @return Offset of the CSV after the checkpoint row
+	 */
+	public synchronized long getCheckpointOffset() {
+		return checkpointOffset;
+	}
+
+	/**
+	 * @param row
+	 * @return If the row was finished by the former import
+	 */
+	public synchronized boolean isFinished(int row) {
+		return row <= checkpointRow || finished.containsKey(row);
+	}
+
+	/**
+	 * @param row
+	 * @return City geocoded by the former import but not committed, null if
+	 *         there is none
+	 */
+	public synchronized City getGeocodedCity(int row) {
+		String record = geocoded.get(row);
+		return record == null ? null : parseCity(record.split(" ", 4)[3]);
+	}
+
+	/**
+	 * @return Number of rows after the checkpoint which are finished or geocoded
+	 */
+	public synchronized int getResumableRows() {
+		return finished.size() + geocoded.size();
+	}
+
+	public void skipped(int row, long offset) {
+		finish(SKIPPED, row, offset);
+	}
+
+	public void invalid(int row, long offset) {
+		finish(INVALID, row, offset);
+	}
+
+	/**
+	 * Records the geocoded city of a row, written through to the file
+	 */
+	public synchronized void geocoded(int row, long offset, City city) {
+		String record = record(GEOCODED, row, offset) + " " + formatCity(city);
+		geocoded.put(row, record);
+		write(record, false);
+	}
+
+	/**
+	 * Records the rows of a committed chunk and the new checkpoint, and forces
+	 * the journal to the disk
+	 *
+	 * @param rows    Rows of the committed cities
+	 * @param offsets Offsets of the CSV after the rows
+	 */
+	public synchronized void persisted(int[] rows, long[] offsets) {
+		for (int i = 0; i < rows.length; i++) {
+			geocoded.remove(rows[i]);
+			String record = record(PERSISTED, rows[i], offsets[i]);
+			finished.put(rows[i], record);
+			write(record, null);
+		}
+		advanceCheckpoint();
+		write(record(CHECKPOINT, checkpointRow, checkpointOffset), true);
+	}
+
+	private synchronized void finish(char type, int row, long offset) {
+		String record = record(type, row, offset);
+		// A geocoded row may turn out to be already in the database
+		geocoded.remove(row);
+		finished.put(row, record);
+		// The invalid rows would have to be downloaded again
+		write(record, type == INVALID ? false : null);
+	}
+
+	/**
+	 * @param record Record to append
+	 * @param sync   Null to leave the record buffered, false to write it to the
+	 *               file, true to also force the file to the disk
+	 */
+	private void write(String record, Boolean sync) {
+		if (failed) {
+			return;
+		}
+		try {
+			out.write(record);
+			out.write('\n');
+			written += record.length() + 1;
+			if (sync != null) {
+				out.flush();
+			}
+			if (Boolean.TRUE.equals(sync)) {
+				channel.force(false);
+				if (written > COMPACT_SIZE) {
+					compact();
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.out.println("Error while writing the import journal. The import continues without it.");
+			failed = true;
+		}
+	}
+
+	/**
+	 * Moves the checkpoint over the finished rows which directly follow it
+	 */
+	private void advanceCheckpoint() {
+		Map.Entry<Integer, String> first;
+		while ((first = finished.firstEntry()) != null && first.getKey() <= checkpointRow + 1) {
+			finished.pollFirstEntry();
+			if (first.getKey() == checkpointRow + 1) {
+				checkpointRow++;
+				checkpointOffset = Long.parseLong(first.getValue().split(" ", 4)[2]);
+			}
+		}
+	}
+
+	/**
+	 * Rewrites the journal with the records after the checkpoint only. The new
+	 * journal replaces the former one atomically.
+	 */
+	private void compact() throws IOException {
+		close();
+		advanceCheckpoint();
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+		try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			writer.write(HEADER + checksum + "\n");
+			writer.write(record(CHECKPOINT, checkpointRow, checkpointOffset) + "\n");
+			for (String record : finished.values()) {
+				writer.write(record + "\n");
+			}
+			for (String record : geocoded.values()) {
+				writer.write(record + "\n");
+			}
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+		written = 0;
+	}
+
+	/**
+	 * Writes the buffered records and closes the journal, which is kept for the
+	 * next import
+	 */
+	public synchronized void close() throws IOException {
+		if (out != null) {
+			if (!failed) {
+				advanceCheckpoint();
+				out.write(record(CHECKPOINT, checkpointRow, checkpointOffset) + "\n");
+			}
+			out.close();
+			out = null;
+			channel = null;
+		}
+	}
+
+	/**
+	 * Closes and deletes the journal once the import is complete
+	 */
+	public synchronized void delete() throws IOException {
+		close();
+		Files.deleteIfExists(path);
+	}
+
+	private static String record(char type, int row, long offset) {
+		return type + " " + row + " " + offset;
+	}
+
+	private static String formatCity(City city) {
+		Bounds bounds = city.getBounds();
+		return escape(city.getPlaceId()) + "\t" + escape(city.getName()) + "\t" + escape(city.getCountry()) + "\t"
+				+ city.getLocation().getLatitude() + "\t" + city.getLocation().getLongitude() + "\t"
+				+ bounds.getSouthWest().getLatitude() + "\t" + bounds.getSouthWest().getLongitude() + "\t"
+				+ bounds.getNorthEast().getLatitude() + "\t" + bounds.getNorthEast().getLongitude();
+	}
+
+	/**
+	 * @return The city, null if the record is torn
+	 */
+	private static City parseCity(String value) {
+		String[] fields = value.split("\t", -1);
+		if (fields.length != 9) {
+			return null;
+		}
+		try {
+			Coordinates southWest = new Coordinates(Double.parseDouble(fields[5]), Double.parseDouble(fields[6]));
+			Coordinates northEast = new Coordinates(Double.parseDouble(fields[7]), Double.parseDouble(fields[8]));
+			Location location = new Location(Double.parseDouble(fields[3]), Double.parseDouble(fields[4]));
+			return new City(unescape(fields[0]), unescape(fields[1]), unescape(fields[2]),
+					new Bounds(northEast, southWest), location);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static String escape(String value) {
+		if (value == null) {
+			return "\\0";
+		}
+		return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	private static String unescape(String value) {
+		if (value.equals("\\0")) {
+			return null;
+		}
+		StringBuilder text = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' && i + 1 < value.length()) {
+				char next = value.charAt(++i);
+				text.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+			} else {
+				text.append(c);
+			}
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,28 @@
+package citiesDistance;
+
+/**
+ * Closest cities search over an immutable in-memory {@link CityDataset}. The
+ * engines are queried through a {@link CityDatasetPublisher}, which publishes
+ * every dataset with its engine and its containment index. Besides the
+ * results, a query leaves the dataset index of every returned city in the
+ * scratch indices of the result buffer, which the result cache uses. The
+ * implementations can be shared between threads as long as every thread uses
+ * its own result buffer.
+ *
+ * @author Rolandas
+ *
+ */
+
+public interface InMemoryQueryEngine {
+
+	/**
+	 * Finds the closest cities within the search radius, see
+	 * {@link DistanceQueryEngine#findClosest}
+	 */
+	void findClosest(double longitude, double latitude, int searchRadius, int limit, QueryResult result);
+
+	/**
+	 * @return The dataset the engine answers from
+	 */
+	CityDataset getDataset();
+}
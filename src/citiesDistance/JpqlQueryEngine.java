@@ -0,0 +1,123 @@
+package citiesDistance;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+/**
+ * Query engine which lets the database calculate the distance to the city
+ * locations. The candidates are first narrowed down with the R*Tree index of
+ * city bounds to the box which contains the search radius, so the
+ * trigonometric functions only run for the cities near the point. The closest
+ * cities are then ranked again by the distance from their bounds, which are
+ * read from the same row as the location, so a search is one SQL statement.
+ * The cities containing a point are found with a point query on the same
+ * R*Tree, checked against the exact bounds of the CITY rows.
+ * 
+ * @author Rolandas
+ *
+ */
+
+public class JpqlQueryEngine implements DistanceQueryEngine {
+	static final String CLOSEST_CITIES_QUERY = "City.findClosest";
+	static final String CONTAINING_CITIES_QUERY = "City.findContaining";
+
+	private static final String DISTANCE_EXPRESSION = "(?1 * acos(cos(radians(?2)) * cos(radians(c.LATITUDE)) * "
+			+ "cos(radians(c.LONGITUDE) - radians(?3)) + sin(radians(?2)) * sin(radians(c.LATITUDE))))";
+
+	// A search box crossing the antimeridian is split into two longitude ranges,
+	// each of them probes the R*Tree on its own. The second range is empty
+	// otherwise. The union drops the cities found by both probes.
+	static final String DISTANCE_QUERY = "SELECT * FROM (SELECT c.*, " + DISTANCE_EXPRESSION
+			+ " AS DISTANCE FROM CITY c WHERE c.ID IN (SELECT ID FROM " + CityBoundsIndex.TABLE
+			+ " WHERE MAX_LON >= ?4 AND MIN_LON <= ?5 AND MAX_LAT >= ?6 AND MIN_LAT <= ?7 UNION SELECT ID FROM "
+			+ CityBoundsIndex.TABLE + " WHERE MAX_LON >= ?10 AND MIN_LON <= ?11 AND MAX_LAT >= ?6 AND MIN_LAT <= ?7)) "
+			+ "WHERE DISTANCE <= ?8 ORDER BY DISTANCE LIMIT ?9";
+	// Longitude range which no city reaches
+	private static final double EMPTY_RANGE = 181;
+
+	// The R*Tree keeps the bounds as 32-bit floats rounded outwards, so the
+	// exact bounds are checked again. The smallest bounds come first, equal
+	// areas by the id, as in the containment index.
+	static final String CONTAINING_QUERY = "SELECT c.* FROM " + CityBoundsIndex.TABLE
+			+ " r JOIN CITY c ON c.ID = r.ID "
+			+ "WHERE r.MIN_LON <= ?1 AND r.MAX_LON >= ?1 AND r.MIN_LAT <= ?2 AND r.MAX_LAT >= ?2 "
+			+ "AND c.SW_LONGITUDE <= ?1 AND c.NE_LONGITUDE >= ?1 AND c.SW_LATITUDE <= ?2 AND c.NE_LATITUDE >= ?2 "
+			+ "ORDER BY (c.NE_LATITUDE - c.SW_LATITUDE) * (c.NE_LONGITUDE - c.SW_LONGITUDE), c.ID";
+
+	private static final LatencyHistogram DATABASE_TIME = Metrics.histogram("query.database");
+	private static final LatencyHistogram RANK_TIME = Metrics.histogram("query.rank");
+
+	private final SqlStatementCounter statementCounter;
+	private final Query closestQuery;
+	private final Query containingQuery;
+
+	/**
+	 * The R*Tree index of the city bounds must be synchronized before the engine
+	 * is used. The engine uses the entity manager exclusively, so every thread
+	 * needs its own engine.
+	 * 
+	 * @param entityManager
+	 * @param statementCounter Counter of the entity manager's persistence unit
+	 */
+	JpqlQueryEngine(EntityManager entityManager, SqlStatementCounter statementCounter) {
+		this.statementCounter = statementCounter;
+
+		// The named query is parsed once when the persistence unit is deployed and
+		// the query object is reused with new parameters for every search
+		closestQuery = entityManager.createNamedQuery(CLOSEST_CITIES_QUERY);
+		containingQuery = entityManager.createNamedQuery(CONTAINING_CITIES_QUERY);
+	}
+
+	@Override
+	public void findClosest(double longitude, double latitude, int searchRadius, int limit, QueryResult result) {
+		double[] box = GeoUtils.searchBox(latitude, longitude, searchRadius);
+
+		closestQuery.setParameter(1, GeoUtils.EARTH_RADIUS);
+		closestQuery.setParameter(2, latitude);
+		closestQuery.setParameter(3, longitude);
+		boolean crossing = box[1] > box[3];
+		closestQuery.setParameter(4, box[1]);
+		closestQuery.setParameter(5, crossing ? 180 : box[3]);
+		closestQuery.setParameter(6, box[0]);
+		closestQuery.setParameter(7, box[2]);
+		closestQuery.setParameter(8, searchRadius);
+		closestQuery.setParameter(9, limit);
+		closestQuery.setParameter(10, crossing ? -180 : EMPTY_RANGE);
+		closestQuery.setParameter(11, crossing ? box[3] : EMPTY_RANGE);
+
+		long statements = statementCounter.getThreadCount();
+		long start = DATABASE_TIME.start();
+		@SuppressWarnings("unchecked")
+		List<City> cities = closestQuery.getResultList();
+		DATABASE_TIME.stop(start);
+		start = RANK_TIME.start();
+		result.clear();
+		result.setStatementCount((int) (statementCounter.getThreadCount() - statements));
+		Coordinates point = new Coordinates(latitude, longitude);
+		for (City city : cities) {
+			double distance = DistanceCalculator.getDistanceFromBounds(point, city.getBounds());
+			result.add(city.getId(), city.getName(), city.getCountry(), distance);
+		}
+		result.sortByDistance();
+		RANK_TIME.stop(start);
+	}
+
+	@Override
+	public void findContaining(double longitude, double latitude, QueryResult result) {
+		containingQuery.setParameter(1, longitude);
+		containingQuery.setParameter(2, latitude);
+
+		long statements = statementCounter.getThreadCount();
+		long start = DATABASE_TIME.start();
+		@SuppressWarnings("unchecked")
+		List<City> cities = containingQuery.getResultList();
+		DATABASE_TIME.stop(start);
+		result.clear();
+		result.setStatementCount((int) (statementCounter.getThreadCount() - statements));
+		for (City city : cities) {
+			result.add(city.getId(), city.getName(), city.getCountry(), 0.0);
+		}
+	}
+}
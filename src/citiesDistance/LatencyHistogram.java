@@ -0,0 +1,189 @@
+package citiesDistance;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with log-linear buckets, in the manner of HdrHistogram.
+ * Every power of two of nanoseconds is split into 32 buckets, so a recorded
+ * value and the percentiles calculated from it differ by at most about 3%,
+ * from a few nanoseconds up to hours. Recording is a bucket increment without
+ * locks or allocation, so it can be used on the query path of every request.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class LatencyHistogram implements Metrics.HistogramMXBean {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Values below SUB_BUCKETS have a bucket each, the 59 larger powers of two
+	// have SUB_BUCKETS buckets each
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final String name;
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return Start time of a measurement, 0 if the metrics are disabled
+	 */
+	public long start() {
+		return Metrics.isEnabled() ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records the time since the start of a measurement
+	 *
+	 * @param start Value returned by {@link #start()}
+	 */
+	public void stop(long start) {
+		if (start != 0) {
+			record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * @param nanos Latency in nanoseconds, negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(nanos, 0);
+		buckets.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+		// The maximum rarely changes, so it is only updated when it grows
+		long current;
+		while (value > (current = max.get())) {
+			if (max.compareAndSet(current, value)) {
+				break;
+			}
+		}
+	}
+
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * @return The largest value which falls into the bucket
+	 */
+	private static long highestValue(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * @param percentile Percentile between 0 and 100
+	 * @return Latency in nanoseconds which the given percentage of the recorded
+	 *         values doesn't exceed, 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max((long) Math.ceil(total * Math.min(percentile, 100.0) / 100.0), 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(highestValue(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return Sum of the recorded values in nanoseconds
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * @return Largest recorded value in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	@Override
+	public double getMeanMicros() {
+		long recorded = count.sum();
+		return recorded == 0 ? 0 : toMicros(sum.sum()) / recorded;
+	}
+
+	@Override
+	public double getP50Micros() {
+		return toMicros(getPercentile(50));
+	}
+
+	@Override
+	public double getP90Micros() {
+		return toMicros(getPercentile(90));
+	}
+
+	@Override
+	public double getP99Micros() {
+		return toMicros(getPercentile(99));
+	}
+
+	@Override
+	public double getP999Micros() {
+		return toMicros(getPercentile(99.9));
+	}
+
+	@Override
+	public double getMaxMicros() {
+		return toMicros(max.get());
+	}
+
+	/**
+	 * Clears the recorded values. Values recorded at the same time may be partly
+	 * kept.
+	 */
+	@Override
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+
+	private static double toMicros(long nanos) {
+		return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+	}
+}
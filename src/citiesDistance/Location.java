@@ -1,35 +1,19 @@
 package citiesDistance;
 
-import javax.persistence.Entity;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
-import javax.persistence.Id;
-import javax.persistence.OneToOne;
+import javax.persistence.Embeddable;
 
 /**
- * Represents the location of a city
+ * Represents the location of a city, stored in the LATITUDE and LONGITUDE
+ * columns of the city
  * 
  * @author Rolandas
  *
  */
 
-@Entity
+@Embeddable
 public class Location {
 	private double latitude;
 	private double longitude;
-	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
-	private int id;
-	@OneToOne
-	private City city;
-
-	public City getCity() {
-		return city;
-	}
-
-	public void setCity(City city) {
-		this.city = city;
-	}
 
 	Location(double latitude, double longitude) {
 		super();
@@ -4,11 +4,9 @@ import javax.annotation.Generated;
 import javax.persistence.metamodel.SingularAttribute;
 import javax.persistence.metamodel.StaticMetamodel;
 
-@Generated(value="Dali", date="2020-03-05T22:01:05.492+0200")
+@Generated(value="Dali", date="2026-10-17T14:12:31.405+0300")
 @StaticMetamodel(Location.class)
 public class Location_ {
 	public static volatile SingularAttribute<Location, Double> latitude;
 	public static volatile SingularAttribute<Location, Double> longitude;
-	public static volatile SingularAttribute<Location, Integer> id;
-	public static volatile SingularAttribute<Location, City> city;
 }
@@ -0,0 +1,220 @@
+package citiesDistance;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the counters, gauges and latency histograms of the import and
+ * the query engines. The metrics are created once per name and kept in static
+ * fields of the classes which update them, so recording doesn't look anything
+ * up. Once {@link #registerMBeans()} is called, every metric is also published
+ * as an MXBean in the "citiesDistance" JMX domain, and {@link #toText()}
+ * formats all of them for the plain text scrape endpoint of the query server.
+ *
+ * @author Rolandas
+ *
+ */
+
+public final class Metrics {
+	static final String JMX_DOMAIN = "citiesDistance";
+	private static final String PREFIX = "cities_";
+
+	private static volatile boolean enabled = true;
+	private static boolean jmx;
+	// Sorted by name, so the scrape output is stable
+	private static final Map<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+	private Metrics() {
+	}
+
+	public interface CounterMXBean {
+		long getCount();
+	}
+
+	public interface GaugeMXBean {
+		long getValue();
+	}
+
+	public interface HistogramMXBean {
+		long getCount();
+
+		double getMeanMicros();
+
+		double getP50Micros();
+
+		double getP90Micros();
+
+		double getP99Micros();
+
+		double getP999Micros();
+
+		double getMaxMicros();
+
+		void reset();
+	}
+
+	/**
+	 * Monotonic count of events
+	 */
+	public static class Counter implements CounterMXBean {
+		private final LongAdder count = new LongAdder();
+
+		public void increment() {
+			if (enabled) {
+				count.increment();
+			}
+		}
+
+		public void add(long value) {
+			if (enabled) {
+				count.add(value);
+			}
+		}
+
+		@Override
+		public long getCount() {
+			return count.sum();
+		}
+	}
+
+	/**
+	 * Value read when the metrics are collected, such as the counters kept by
+	 * another class
+	 */
+	public static class Gauge implements GaugeMXBean {
+		private volatile LongSupplier value;
+
+		Gauge(LongSupplier value) {
+			this.value = value;
+		}
+
+		@Override
+		public long getValue() {
+			return value.getAsLong();
+		}
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param enabled Record the counters and latencies, the gauges are always
+	 *                read
+	 */
+	public static void setEnabled(boolean enabled) {
+		Metrics.enabled = enabled;
+	}
+
+	/**
+	 * @param name Dot separated name, such as "import.rows.read"
+	 * @return The counter of the name, created on first use
+	 */
+	public static Counter counter(String name) {
+		return (Counter) register(name, new Counter());
+	}
+
+	/**
+	 * @param name Dot separated name of the measured stage
+	 * @return The histogram of the name, created on first use
+	 */
+	public static LatencyHistogram histogram(String name) {
+		return (LatencyHistogram) register(name, new LatencyHistogram(name));
+	}
+
+	/**
+	 * Registers a gauge, or replaces the value of the registered one
+	 *
+	 * @param name  Dot separated name
+	 * @param value Read whenever the metrics are collected
+	 */
+	public static void gauge(String name, LongSupplier value) {
+		Object registered = register(name, new Gauge(value));
+		((Gauge) registered).value = value;
+	}
+
+	private static synchronized Object register(String name, Object metric) {
+		Object registered = metrics.get(name);
+		if (registered != null) {
+			if (registered.getClass() != metric.getClass()) {
+				throw new IllegalArgumentException("Metric " + name + " is already registered with another type");
+			}
+			return registered;
+		}
+		metrics.put(name, metric);
+		if (jmx) {
+			registerMBean(name, metric);
+		}
+		return metric;
+	}
+
+	/**
+	 * Publishes the registered metrics and the ones registered later through the
+	 * platform MBean server
+	 */
+	public static synchronized void registerMBeans() {
+		if (!jmx) {
+			jmx = true;
+			for (Map.Entry<String, Object> metric : metrics.entrySet()) {
+				registerMBean(metric.getKey(), metric.getValue());
+			}
+		}
+	}
+
+	private static void registerMBean(String name, Object metric) {
+		String type = metric instanceof Counter ? "Counter" : metric instanceof Gauge ? "Gauge" : "Histogram";
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+			if (!server.isRegistered(objectName)) {
+				server.registerMBean(metric, objectName);
+			}
+		} catch (JMException e) {
+			e.printStackTrace();
+			System.out.println("Error while registering the metric " + name + " with JMX.");
+		}
+	}
+
+	/**
+	 * Formats the metrics in the Prometheus text format. The latencies are
+	 * reported as summaries in seconds.
+	 *
+	 * @return Every metric, with the dots of the names replaced by underscores
+	 */
+	public static String toText() {
+		StringBuilder text = new StringBuilder(4096);
+		for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+			String name = PREFIX + entry.getKey().replace('.', '_');
+			Object metric = entry.getValue();
+			if (metric instanceof Counter) {
+				text.append("# TYPE ").append(name).append("_total counter\n");
+				text.append(name).append("_total ").append(((Counter) metric).getCount()).append('\n');
+			} else if (metric instanceof Gauge) {
+				text.append("# TYPE ").append(name).append(" gauge\n");
+				text.append(name).append(' ').append(((Gauge) metric).getValue()).append('\n');
+			} else {
+				LatencyHistogram histogram = (LatencyHistogram) metric;
+				name += "_seconds";
+				text.append("# TYPE ").append(name).append(" summary\n");
+				for (String quantile : new String[] { "0.5", "0.9", "0.99", "0.999" }) {
+					text.append(name).append("{quantile=\"").append(quantile).append("\"} ");
+					text.append(toSeconds(histogram.getPercentile(Double.parseDouble(quantile) * 100))).append('\n');
+				}
+				text.append(name).append("_sum ").append(toSeconds(histogram.getSum())).append('\n');
+				text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+			}
+		}
+		return text.toString();
+	}
+
+	private static double toSeconds(long nanos) {
+		return nanos / 1e9;
+	}
+}
@@ -0,0 +1,87 @@
+package citiesDistance;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of primitive (double key, int value) pairs. Used as the
+ * priority queue of the spatial searches, so no boxing happens while a query
+ * runs.
+ *
+ * @author Rolandas
+ *
+ */
+
+final class MinHeap {
+	private double[] keys;
+	private int[] values;
+	private int size;
+
+	MinHeap(int capacity) {
+		keys = new double[Math.max(capacity, 1)];
+		values = new int[keys.length];
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	double peekKey() {
+		return keys[0];
+	}
+
+	int peekValue() {
+		return values[0];
+	}
+
+	void push(double key, int value) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		int i = size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (keys[parent] <= key) {
+				break;
+			}
+			keys[i] = keys[parent];
+			values[i] = values[parent];
+			i = parent;
+		}
+		keys[i] = key;
+		values[i] = value;
+	}
+
+	/**
+	 * Removes the smallest pair. Its key and value must be read with
+	 * {@link #peekKey()} and {@link #peekValue()} beforehand.
+	 */
+	void pop() {
+		double key = keys[--size];
+		int value = values[size];
+		int i = 0;
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && keys[child + 1] < keys[child]) {
+				child++;
+			}
+			if (key <= keys[child]) {
+				break;
+			}
+			keys[i] = keys[child];
+			values[i] = values[child];
+			i = child;
+		}
+		keys[i] = key;
+		values[i] = value;
+	}
+}
@@ -0,0 +1,142 @@
+package citiesDistance;
+
+import java.util.Arrays;
+
+/**
+ * Reusable buffer for the results of a distance query. The query engines clear
+ * and fill it on every query, and the arrays only grow when a larger limit is
+ * requested, so a warmed up buffer doesn't allocate anything per query. A
+ * buffer must not be shared between threads.
+ * 
+ * @author Rolandas
+ *
+ */
+
+public class QueryResult {
+	private int size;
+	private int statementCount;
+	int[] cityIds;
+	String[] names;
+	String[] countries;
+	double[] distances;
+
+	// Scratch space of the in-memory query engines
+	final MinHeap heap = new MinHeap(64);
+	int[] indices;
+	private float[] lowerBounds;
+
+	public QueryResult() {
+		this(16);
+	}
+
+	public QueryResult(int capacity) {
+		cityIds = new int[capacity];
+		names = new String[capacity];
+		countries = new String[capacity];
+		distances = new double[capacity];
+		indices = new int[capacity];
+	}
+
+	void clear() {
+		Arrays.fill(names, 0, size, null);
+		Arrays.fill(countries, 0, size, null);
+		size = 0;
+		statementCount = 0;
+	}
+
+	void ensureCapacity(int capacity) {
+		if (capacity > cityIds.length) {
+			cityIds = Arrays.copyOf(cityIds, capacity);
+			names = Arrays.copyOf(names, capacity);
+			countries = Arrays.copyOf(countries, capacity);
+			distances = Arrays.copyOf(distances, capacity);
+			indices = Arrays.copyOf(indices, capacity);
+		}
+	}
+
+	/**
+	 * @return Scratch array of the scan engine with at least the size
+	 */
+	float[] lowerBounds(int size) {
+		if (lowerBounds == null || lowerBounds.length < size) {
+			lowerBounds = new float[size];
+		}
+		return lowerBounds;
+	}
+
+	void setSize(int size) {
+		this.size = size;
+	}
+
+	void setStatementCount(int statementCount) {
+		this.statementCount = statementCount;
+	}
+
+	void add(int cityId, String name, String country, double distance) {
+		ensureCapacity(size + 1);
+		cityIds[size] = cityId;
+		names[size] = name;
+		countries[size] = country;
+		distances[size] = distance;
+		size++;
+	}
+
+	/**
+	 * Sorts the results by distance, closest first. Insertion sort is used, as the
+	 * number of results is small and it needs no extra memory.
+	 */
+	void sortByDistance() {
+		for (int i = 1; i < size; i++) {
+			int cityId = cityIds[i];
+			String name = names[i];
+			String country = countries[i];
+			double distance = distances[i];
+			int j = i - 1;
+			for (; j >= 0 && distances[j] > distance; j--) {
+				cityIds[j + 1] = cityIds[j];
+				names[j + 1] = names[j];
+				countries[j + 1] = countries[j];
+				distances[j + 1] = distances[j];
+			}
+			cityIds[j + 1] = cityId;
+			names[j + 1] = name;
+			countries[j + 1] = country;
+			distances[j + 1] = distance;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getCityId(int i) {
+		return cityIds[i];
+	}
+
+	public String getName(int i) {
+		return names[i];
+	}
+
+	public String getCountry(int i) {
+		return countries[i];
+	}
+
+	/**
+	 * @return Distance from the city bounds in km, 0 if the point is inside them
+	 */
+	public double getDistance(int i) {
+		return distances[i];
+	}
+
+	public boolean isInsideBounds(int i) {
+		return distances[i] == 0.0;
+	}
+
+	/**
+	 * @return Number of SQL statements the query sent to the database, 0 for the
+	 *         in-memory engines
+	 */
+	public int getStatementCount() {
+		return statementCount;
+	}
+}
@@ -0,0 +1,212 @@
+package citiesDistance;
+
+import java.util.Arrays;
+
+/**
+ * Static R-tree over latitude/longitude rectangles, bulk loaded with the
+ * Sort-Tile-Recursive algorithm. The tree is immutable once built, so it can be
+ * shared between threads. Entries are referenced by their index in the arrays
+ * passed to the constructor.
+ *
+ * @author Rolandas
+ *
+ */
+
+final class RTree {
+	private static final int NODE_CAPACITY = 16;
+
+	// Entry rectangles, indexed by entry id
+	private final double[] minLat, minLon, maxLat, maxLon;
+
+	// Node rectangles, indexed by node id
+	private double[] nodeMinLat, nodeMinLon, nodeMaxLat, nodeMaxLon;
+	private int[] childStart, childCount;
+	private boolean[] leaf;
+	// Children of every node are stored contiguously in this array
+	private int[] children;
+	private int nodeCount;
+	private int childrenCount;
+	private final int root;
+
+	RTree(int size, double[] minLat, double[] minLon, double[] maxLat, double[] maxLon) {
+		this.minLat = minLat;
+		this.minLon = minLon;
+		this.maxLat = maxLat;
+		this.maxLon = maxLon;
+
+		int estimatedNodes = size / (NODE_CAPACITY / 2) + 2;
+		nodeMinLat = new double[estimatedNodes];
+		nodeMinLon = new double[estimatedNodes];
+		nodeMaxLat = new double[estimatedNodes];
+		nodeMaxLon = new double[estimatedNodes];
+		childStart = new int[estimatedNodes];
+		childCount = new int[estimatedNodes];
+		leaf = new boolean[estimatedNodes];
+		children = new int[size + estimatedNodes];
+
+		root = size == 0 ? -1 : build(size);
+	}
+
+	/**
+	 * Builds the tree bottom-up, one level at a time
+	 *
+	 * @return Id of the root node
+	 */
+	private int build(int size) {
+		int[] items = new int[size];
+		double[] itemMinLat = Arrays.copyOf(minLat, size);
+		double[] itemMinLon = Arrays.copyOf(minLon, size);
+		double[] itemMaxLat = Arrays.copyOf(maxLat, size);
+		double[] itemMaxLon = Arrays.copyOf(maxLon, size);
+		for (int i = 0; i < size; i++) {
+			items[i] = i;
+		}
+
+		boolean leafLevel = true;
+		while (true) {
+			int count = items.length;
+			int firstNode = nodeCount;
+			sortByCentre(items, 0, count, itemMinLon, itemMaxLon);
+
+			int nodes = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+			int slices = (int) Math.ceil(Math.sqrt(nodes));
+			int sliceSize = slices * NODE_CAPACITY;
+			for (int sliceStart = 0; sliceStart < count; sliceStart += sliceSize) {
+				int sliceEnd = Math.min(sliceStart + sliceSize, count);
+				sortByCentre(items, sliceStart, sliceEnd, itemMinLat, itemMaxLat);
+				for (int groupStart = sliceStart; groupStart < sliceEnd; groupStart += NODE_CAPACITY) {
+					int groupEnd = Math.min(groupStart + NODE_CAPACITY, sliceEnd);
+					addNode(items, groupStart, groupEnd, leafLevel, itemMinLat, itemMinLon, itemMaxLat, itemMaxLon);
+				}
+			}
+
+			int created = nodeCount - firstNode;
+			if (created == 1) {
+				return firstNode;
+			}
+			items = new int[created];
+			for (int i = 0; i < created; i++) {
+				items[i] = firstNode + i;
+			}
+			itemMinLat = nodeMinLat;
+			itemMinLon = nodeMinLon;
+			itemMaxLat = nodeMaxLat;
+			itemMaxLon = nodeMaxLon;
+			leafLevel = false;
+		}
+	}
+
+	private void addNode(int[] items, int from, int to, boolean isLeaf, double[] itemMinLat, double[] itemMinLon,
+			double[] itemMaxLat, double[] itemMaxLon) {
+		if (nodeCount == leaf.length) {
+			int capacity = nodeCount * 2;
+			nodeMinLat = Arrays.copyOf(nodeMinLat, capacity);
+			nodeMinLon = Arrays.copyOf(nodeMinLon, capacity);
+			nodeMaxLat = Arrays.copyOf(nodeMaxLat, capacity);
+			nodeMaxLon = Arrays.copyOf(nodeMaxLon, capacity);
+			childStart = Arrays.copyOf(childStart, capacity);
+			childCount = Arrays.copyOf(childCount, capacity);
+			leaf = Arrays.copyOf(leaf, capacity);
+		}
+		if (childrenCount + (to - from) > children.length) {
+			children = Arrays.copyOf(children, children.length * 2 + (to - from));
+		}
+
+		double boxMinLat = Double.POSITIVE_INFINITY, boxMinLon = Double.POSITIVE_INFINITY;
+		double boxMaxLat = Double.NEGATIVE_INFINITY, boxMaxLon = Double.NEGATIVE_INFINITY;
+		for (int i = from; i < to; i++) {
+			int item = items[i];
+			boxMinLat = Math.min(boxMinLat, itemMinLat[item]);
+			boxMinLon = Math.min(boxMinLon, itemMinLon[item]);
+			boxMaxLat = Math.max(boxMaxLat, itemMaxLat[item]);
+			boxMaxLon = Math.max(boxMaxLon, itemMaxLon[item]);
+			children[childrenCount + i - from] = item;
+		}
+
+		int node = nodeCount++;
+		nodeMinLat[node] = boxMinLat;
+		nodeMinLon[node] = boxMinLon;
+		nodeMaxLat[node] = boxMaxLat;
+		nodeMaxLon[node] = boxMaxLon;
+		childStart[node] = childrenCount;
+		childCount[node] = to - from;
+		leaf[node] = isLeaf;
+		childrenCount += to - from;
+	}
+
+	/**
+	 * Sorts a range of items by the centre of their rectangles along one axis.
+	 * The float key and the item id are packed into a long, so a primitive sort
+	 * can be used.
+	 */
+	private static void sortByCentre(int[] items, int from, int to, double[] low, double[] high) {
+		long[] packed = new long[to - from];
+		for (int i = from; i < to; i++) {
+			int bits = Float.floatToIntBits((float) ((low[items[i]] + high[items[i]]) / 2));
+			bits ^= (bits >> 31) & 0x7fffffff;
+			packed[i - from] = ((long) bits << 32) | (items[i] & 0xffffffffL);
+		}
+		Arrays.sort(packed);
+		for (int i = from; i < to; i++) {
+			items[i] = (int) packed[i - from];
+		}
+	}
+
+	/**
+	 * Best-first nearest neighbour search. Nodes are visited in order of the lower
+	 * bound of their distance, and entries in order of their exact distance from
+	 * bounds, so the search stops as soon as k entries were taken off the queue.
+	 *
+	 * @param heap         Priority queue used for the search, cleared beforehand
+	 * @param maxDistance  Entries further than this distance are ignored
+	 * @param outIds       Receives the entry ids, closest first
+	 * @param outDistances Receives the distances of the entries
+	 * @return Number of entries found, at most k
+	 */
+	int nearest(double lat, double lon, int k, double maxDistance, MinHeap heap, int[] outIds,
+			double[] outDistances) {
+		heap.clear();
+		if (root < 0 || k <= 0) {
+			return 0;
+		}
+		heap.push(GeoUtils.lowerBound(lat, lon, nodeMinLat[root], nodeMinLon[root], nodeMaxLat[root],
+				nodeMaxLon[root]), root);
+
+		int found = 0;
+		while (!heap.isEmpty() && found < k) {
+			double key = heap.peekKey();
+			int value = heap.peekValue();
+			heap.pop();
+			if (key > maxDistance) {
+				break;
+			}
+
+			// Negative values mark entries, which are already ranked by exact distance
+			if (value < 0) {
+				outIds[found] = -value - 1;
+				outDistances[found] = key;
+				found++;
+				continue;
+			}
+
+			int end = childStart[value] + childCount[value];
+			for (int i = childStart[value]; i < end; i++) {
+				int child = children[i];
+				if (leaf[value]) {
+					double distance = GeoUtils.distanceFromBounds(lat, lon, minLat[child], minLon[child],
+							maxLat[child], maxLon[child]);
+					if (distance <= maxDistance) {
+						heap.push(distance, -child - 1);
+					}
+				} else {
+					double bound = GeoUtils.lowerBound(lat, lon, nodeMinLat[child], nodeMinLon[child],
+							nodeMaxLat[child], nodeMaxLon[child]);
+					if (bound <= maxDistance) {
+						heap.push(bound, child);
+					}
+				}
+			}
+		}
+		return found;
+	}
+}
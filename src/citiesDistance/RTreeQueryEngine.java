@@ -0,0 +1,51 @@
+package citiesDistance;
+
+/**
+ * Query engine which keeps the city data in memory and indexes the city bounds
+ * with an R-tree. Unlike {@link JpqlQueryEngine}, which ranks the cities by the
+ * distance to their location before truncating the list, this engine returns
+ * the exact closest cities by the distance from their bounds. The branch and
+ * bound search only calculates the distance of the cities in the tree nodes
+ * which can still contain a closer city. The engine is immutable, so it can be
+ * shared between threads as long as every thread uses its own result buffer.
+ * 
+ * @author Rolandas
+ *
+ */
+
+public class RTreeQueryEngine implements InMemoryQueryEngine {
+	private final CityDataset cities;
+	private final RTree boundsTree;
+
+	RTreeQueryEngine(CityDataset cities) {
+		this.cities = cities;
+		boundsTree = new RTree(cities.size, cities.swLat, cities.swLon, cities.neLat, cities.neLon);
+	}
+
+	@Override
+	public CityDataset getDataset() {
+		return cities;
+	}
+
+	/**
+	 * Finds the closest cities whose bounds are within the search radius. The
+	 * search radius is applied to the distance from the bounds. The search only
+	 * uses the scratch space of the result buffer, so it doesn't allocate.
+	 */
+	@Override
+	public void findClosest(double longitude, double latitude, int searchRadius, int limit, QueryResult result) {
+		result.clear();
+		result.ensureCapacity(limit);
+		int found = boundsTree.nearest(latitude, longitude, limit, searchRadius, result.heap, result.indices,
+				result.distances);
+
+		// The tree returns the cities already sorted by the distance from bounds
+		for (int i = 0; i < found; i++) {
+			int city = result.indices[i];
+			result.cityIds[i] = cities.ids[city];
+			result.names[i] = cities.names[city];
+			result.countries[i] = cities.countries[city];
+		}
+		result.setSize(found);
+	}
+}
@@ -0,0 +1,150 @@
+package citiesDistance;
+
+/**
+ * Brute-force query engine, which scans every city of the dataset instead of
+ * an index. The bounds are kept as float columns, slightly enlarged so they
+ * contain the exact bounds, and the scan first calculates a lower bound of the
+ * haversine term of every city in a block. That pass has no branches and no
+ * trigonometric calls, so the JIT compiler can vectorise it. Only the cities
+ * whose lower bound is within the distance of the current k-th closest city
+ * get the exact {@link GeoUtils#distanceFromBounds} distance, and the closest
+ * cities are kept in a primitive heap.
+ *
+ * The lower bound follows from the haversine formula of the distance to the
+ * clamped point: a = sin^2(dLat / 2) + cos(lat) cos(clamped lat) sin^2(dLon / 2),
+ * with sin(x) &gt;= x - x^3 / 6 and the smallest cosine of the city latitudes.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class ScanQueryEngine implements InMemoryQueryEngine {
+	static final int BLOCK = 1024;
+	// Enlargement of the float bounds in degrees, covers the rounding of the
+	// coordinates and of the point
+	private static final float SLACK = 1e-4f;
+	// Makes up for the rounding of the float arithmetic of the lower bound
+	private static final double ROUNDING = 1 - 1e-4;
+	private static final float RADIANS = (float) (Math.PI / 180);
+
+	private final CityDataset cities;
+	private final float[] swLat, swLon, neLat, neLon;
+	// Smallest cosine of the latitudes of the bounds
+	private final float[] minCos;
+
+	ScanQueryEngine(CityDataset cities) {
+		this.cities = cities;
+		int size = cities.size;
+		swLat = new float[size];
+		swLon = new float[size];
+		neLat = new float[size];
+		neLon = new float[size];
+		minCos = new float[size];
+		for (int i = 0; i < size; i++) {
+			swLat[i] = (float) cities.swLat[i] - SLACK;
+			swLon[i] = (float) cities.swLon[i] - SLACK;
+			neLat[i] = (float) cities.neLat[i] + SLACK;
+			neLon[i] = (float) cities.neLon[i] + SLACK;
+			double cos = Math.min(Math.cos(Math.toRadians(Math.max(cities.swLat[i] - SLACK, -90))),
+					Math.cos(Math.toRadians(Math.min(cities.neLat[i] + SLACK, 90))));
+			minCos[i] = (float) Math.max(cos - 1e-6, 0.0);
+		}
+	}
+
+	@Override
+	public CityDataset getDataset() {
+		return cities;
+	}
+
+	/**
+	 * Finds the closest cities whose bounds are within the search radius. The
+	 * search only uses the scratch space of the result buffer, so it doesn't
+	 * allocate once the buffer is warmed up.
+	 */
+	@Override
+	public void findClosest(double longitude, double latitude, int searchRadius, int limit, QueryResult result) {
+		result.clear();
+		if (limit <= 0) {
+			return;
+		}
+		result.ensureCapacity(limit);
+		float[] lowerBounds = result.lowerBounds(BLOCK);
+		// Closest cities so far, the farthest on top
+		MinHeap closest = result.heap;
+		closest.clear();
+
+		float lat = (float) latitude;
+		float lon = (float) longitude;
+		float cosLat = (float) Math.max(Math.cos(Math.toRadians(latitude)) - 1e-6, 0.0);
+		double radiusTerm = haversineTerm(Math.min(searchRadius, Math.PI * GeoUtils.EARTH_RADIUS));
+		double threshold = radiusTerm;
+
+		for (int from = 0; from < cities.size; from += BLOCK) {
+			int to = Math.min(from + BLOCK, cities.size);
+			lowerBound(lat, lon, cosLat, from, to, lowerBounds);
+
+			for (int i = from; i < to; i++) {
+				if (lowerBounds[i - from] * ROUNDING > threshold) {
+					continue;
+				}
+				double distance = GeoUtils.distanceFromBounds(latitude, longitude, cities.swLat[i],
+						cities.swLon[i], cities.neLat[i], cities.neLon[i]);
+				if (distance > searchRadius) {
+					continue;
+				}
+				if (closest.size() < limit) {
+					closest.push(-distance, i);
+				} else if (distance < -closest.peekKey()) {
+					closest.pop();
+					closest.push(-distance, i);
+				} else {
+					continue;
+				}
+				if (closest.size() == limit) {
+					threshold = Math.min(radiusTerm, haversineTerm(-closest.peekKey()));
+				}
+			}
+		}
+
+		int found = closest.size();
+		for (int i = found - 1; i >= 0; i--) {
+			int city = closest.peekValue();
+			result.indices[i] = city;
+			result.distances[i] = -closest.peekKey();
+			result.cityIds[i] = cities.ids[city];
+			result.names[i] = cities.names[city];
+			result.countries[i] = cities.countries[city];
+			closest.pop();
+		}
+		result.setSize(found);
+	}
+
+	/**
+	 * Lower bound of the haversine term of the cities in the range. Written
+	 * without branches over the primitive columns, so the loop can be vectorised.
+	 */
+	private void lowerBound(float lat, float lon, float cosLat, int from, int to, float[] out) {
+		for (int i = from; i < to; i++) {
+			float diffLat = Math.max(Math.max(swLat[i] - lat, lat - neLat[i]), 0f);
+			float diffLon = Math.max(Math.max(swLon[i] - lon, lon - neLon[i]), 0f);
+			// Longitude gaps over 180 degrees are closer the other way round, where
+			// the enlarged bounds make the gap smaller instead of larger
+			diffLon = Math.max(Math.min(diffLon, 360f - 4 * SLACK - diffLon), 0f);
+
+			float halfLat = diffLat * (RADIANS / 2);
+			float halfLon = diffLon * (RADIANS / 2);
+			float sinLat = halfLat * (1f - halfLat * halfLat * (1f / 6));
+			float sinLon = halfLon * (1f - halfLon * halfLon * (1f / 6));
+			out[i - from] = sinLat * sinLat + cosLat * minCos[i] * sinLon * sinLon;
+		}
+	}
+
+	/**
+	 * @param distance Distance in km
+	 * @return The haversine term a of the distance, which grows with it
+	 */
+	private static double haversineTerm(double distance) {
+		double sin = Math.sin(distance / (2.0 * GeoUtils.EARTH_RADIUS));
+		return sin * sin;
+	}
+}
@@ -0,0 +1,69 @@
+package citiesDistance;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+
+/**
+ * Counts the SQL statements which EclipseLink sends to the database. It is
+ * installed as the profiler of the persistence unit's session and sees every
+ * statement, including the ones of lazily loaded relationships, so the number
+ * of round trips of a query can be checked by comparing the count of its
+ * thread before and after it.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class SqlStatementCounter extends SessionProfilerAdapter {
+	private final AtomicLong statements = new AtomicLong();
+	// Statements are executed on the thread which runs the query
+	private final ThreadLocal<long[]> threadStatements = ThreadLocal.withInitial(() -> new long[1]);
+
+	/**
+	 * Installs a new counter as the profiler of the factory's session
+	 *
+	 * @param factory
+	 * @return The installed counter
+	 */
+	public static SqlStatementCounter install(EntityManagerFactory factory) {
+		SqlStatementCounter counter = new SqlStatementCounter();
+		JpaHelper.getServerSession(factory).setProfiler(counter);
+		return counter;
+	}
+
+	@Override
+	public void startOperationProfile(String operationName, DatabaseQuery query, int weight) {
+		// Every statement is prepared right before it's executed, while the
+		// StatementExecute timer is also started when the statement is closed
+		if (SessionProfiler.SqlPrepare.equals(operationName)) {
+			statements.incrementAndGet();
+			threadStatements.get()[0]++;
+		}
+	}
+
+	@Override
+	public int getProfileWeight() {
+		return SessionProfiler.ALL;
+	}
+
+	/**
+	 * @return Number of statements executed since the counter was installed
+	 */
+	public long getCount() {
+		return statements.get();
+	}
+
+	/**
+	 * @return Number of statements executed by the current thread since the
+	 *         counter was installed
+	 */
+	public long getThreadCount() {
+		return threadStatements.get()[0];
+	}
+}
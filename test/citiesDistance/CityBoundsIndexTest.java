@@ -0,0 +1,74 @@
+package citiesDistance;
+
+import static org.junit.Assert.assertEquals;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The R*Tree entries of {@link CityBoundsIndex} are ordered the same way
+ * whether a city is added by the import or by the synchronization, also for
+ * the bounds of a city crossing the antimeridian.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class CityBoundsIndexTest {
+
+	@Before
+	public void setUp() throws Exception {
+		TestDatabase.create();
+		TestDatabase.clear();
+	}
+
+	@Test
+	public void cityCrossingAntimeridianIsPersisted() throws Exception {
+		CitiesDataImport cdi = new CitiesDataImport("");
+		cdi.cityList.add(new City("test:suva", "Suva", "Fiji",
+				new Bounds(new Coordinates(-17.9, -179.8), new Coordinates(-18.3, 179.7)),
+				new Location(-18.1, 179.9)));
+		cdi.cityList.add(new City("test:vilnius", "Vilnius", "Lithuania",
+				new Bounds(new Coordinates(54.83, 25.48), new Coordinates(54.57, 25.02)), new Location(54.69, 25.28)));
+		cdi.PersistData();
+
+		assertEquals(2, TestDatabase.queryLong("SELECT COUNT(*) FROM CITY"));
+		assertEquals(2, TestDatabase.queryLong("SELECT COUNT(*) FROM " + CityBoundsIndex.TABLE));
+		assertEquals(0, TestDatabase.queryLong(
+				"SELECT COUNT(*) FROM " + CityBoundsIndex.TABLE + " WHERE MIN_LON > MAX_LON OR MIN_LAT > MAX_LAT"));
+		String suva = "(SELECT ID FROM CITY WHERE PLACEID = 'test:suva')";
+		assertEquals(-180, TestDatabase.queryLong(
+				"SELECT ROUND(MIN_LON) FROM " + CityBoundsIndex.TABLE + " WHERE ID = " + suva));
+		assertEquals(180, TestDatabase.queryLong(
+				"SELECT ROUND(MAX_LON) FROM " + CityBoundsIndex.TABLE + " WHERE ID = " + suva));
+
+		// The synchronization creates the same entries
+		long indexed = TestDatabase.queryLong("SELECT SUM(MIN_LON + MAX_LON + MIN_LAT + MAX_LAT) FROM "
+				+ CityBoundsIndex.TABLE);
+		EntityManager entityManager = CitiesPersistence.getFactory().createEntityManager();
+		try {
+			entityManager.getTransaction().begin();
+			entityManager.createNativeQuery("DELETE FROM " + CityBoundsIndex.TABLE).executeUpdate();
+			CityBoundsIndex.synchronize(entityManager);
+			entityManager.getTransaction().commit();
+		} finally {
+			entityManager.close();
+		}
+		assertEquals(indexed, TestDatabase.queryLong("SELECT SUM(MIN_LON + MAX_LON + MIN_LAT + MAX_LAT) FROM "
+				+ CityBoundsIndex.TABLE));
+	}
+
+	@Test
+	public void boundsAreNotIndexedWhenTurnedOff() throws Exception {
+		CitiesDataImport cdi = new CitiesDataImport("");
+		cdi.setIndexBounds(false);
+		cdi.cityList.add(new City("test:vilnius", "Vilnius", "Lithuania",
+				new Bounds(new Coordinates(54.83, 25.48), new Coordinates(54.57, 25.02)), new Location(54.69, 25.28)));
+		cdi.PersistData();
+
+		assertEquals(1, TestDatabase.queryLong("SELECT COUNT(*) FROM CITY"));
+		assertEquals(0, TestDatabase.queryLong("SELECT COUNT(*) FROM " + CityBoundsIndex.TABLE));
+	}
+}
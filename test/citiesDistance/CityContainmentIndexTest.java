@@ -0,0 +1,95 @@
+package citiesDistance;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The {@link CityContainmentIndex} finds the same cities in the same order as
+ * a check of the bounds of every city.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class CityContainmentIndexTest {
+	private static final int CITIES = 5000;
+	private static final int POINTS = 20000;
+
+	@Test
+	public void containingCitiesEqualBruteForce() {
+		CityDataset dataset = TestCities.dataset(CITIES, 1);
+		Random random = new Random(2);
+		for (int i = 0; i < CITIES; i += 50) {
+			// Bounds spanning more cells than a grid cell lists
+			dataset.swLat[i] = Math.max(dataset.centreLat[i] - random.nextDouble() * 10, -90);
+			dataset.neLat[i] = Math.min(dataset.centreLat[i] + random.nextDouble() * 10, 90);
+			dataset.swLon[i] = Math.max(dataset.centreLon[i] - random.nextDouble() * 20, -180);
+			dataset.neLon[i] = Math.min(dataset.centreLon[i] + random.nextDouble() * 20, 180);
+		}
+		// Bounds which can't contain any point
+		dataset.swLat[7] = dataset.neLat[7] + 0.1;
+		// Equal bounds, ordered by their position in the dataset
+		for (int i = 12; i < 15; i++) {
+			dataset.swLat[i] = dataset.swLat[11];
+			dataset.swLon[i] = dataset.swLon[11];
+			dataset.neLat[i] = dataset.neLat[11];
+			dataset.neLon[i] = dataset.neLon[11];
+		}
+		CityContainmentIndex index = new CityContainmentIndex(dataset);
+
+		QueryResult result = new QueryResult();
+		for (int i = 0; i < POINTS; i++) {
+			double lat, lon;
+			int city = random.nextInt(CITIES);
+			if (i % 4 == 0) {
+				lat = random.nextDouble() * 180 - 90;
+				lon = random.nextDouble() * 360 - 180;
+			} else if (i % 4 == 1) {
+				// On the south-west corner, the bounds include their edges
+				lat = dataset.swLat[city];
+				lon = dataset.swLon[city];
+			} else {
+				lat = dataset.centreLat[city] + random.nextGaussian() * 0.1;
+				lon = dataset.centreLon[city] + random.nextGaussian() * 0.1;
+			}
+			index.findContaining(lon, lat, result);
+			List<Integer> actual = new ArrayList<>();
+			for (int k = 0; k < result.size(); k++) {
+				actual.add(result.getCityId(k));
+			}
+			assertEquals("Point " + lat + ", " + lon, containing(dataset, lon, lat), actual);
+		}
+	}
+
+	/**
+	 * @return Ids of the cities containing the point, the smallest bounds first
+	 *         and equal areas in the dataset order
+	 */
+	private static List<Integer> containing(CityDataset dataset, double lon, double lat) {
+		List<Integer> found = new ArrayList<>();
+		for (int i = 0; i < dataset.size; i++) {
+			if (lat >= dataset.swLat[i] && lat <= dataset.neLat[i] && lon >= dataset.swLon[i]
+					&& lon <= dataset.neLon[i]) {
+				found.add(i);
+			}
+		}
+		found.sort((a, b) -> {
+			int byArea = Float.compare(area(dataset, a), area(dataset, b));
+			return byArea != 0 ? byArea : Integer.compare(a, b);
+		});
+		List<Integer> ids = new ArrayList<>();
+		for (int i : found) {
+			ids.add(dataset.ids[i]);
+		}
+		return ids;
+	}
+
+	private static float area(CityDataset dataset, int i) {
+		return (float) ((dataset.neLat[i] - dataset.swLat[i]) * (dataset.neLon[i] - dataset.swLon[i]));
+	}
+}
@@ -0,0 +1,133 @@
+package citiesDistance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The {@link CityCsvReader} splits the rows of the import CSV like a
+ * spreadsheet saves them, whatever the line breaks and the buffer size are,
+ * and the import skips the rows which aren't cities.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class CityCsvReaderTest {
+	// Smaller than the longest row, so the buffer has to grow
+	private static final int BUFFER_SIZE = 8;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void quotedFieldsAreUnquoted() throws IOException {
+		Path csv = write("cityName;cityCountry\n\"Vilnius\";Lithuania\n\"Foo; Bar\";\"Say \"\"Hi\"\"\"\n"
+				+ "Sa\"id;\"Open\n\"\";\"Late\" quote\n");
+
+		List<List<String>> rows = readAll(csv, true);
+		assertEquals(Arrays.asList("Vilnius", "Lithuania"), rows.get(1));
+		assertEquals(Arrays.asList("Foo; Bar", "Say \"Hi\""), rows.get(2));
+		// Quotes which don't enclose the field are kept
+		assertEquals(Arrays.asList("Sa\"id", "\"Open"), rows.get(3));
+		assertEquals(Arrays.asList("", "\"Late\" quote"), rows.get(4));
+	}
+
+	@Test
+	public void quotesAreKeptWithoutQuoting() throws IOException {
+		Path csv = write("\"Foo;Bar\";\"Baz\"\n");
+
+		assertEquals(Arrays.asList("\"Foo", "Bar\"", "\"Baz\""), readAll(csv, false).get(0));
+	}
+
+	@Test
+	public void lineBreaksAndLastLine() throws IOException {
+		Path csv = write("\uFEFFcityName;cityCountry\r\nVilnius;Lithuania\r\n\r\nRiga;Latvia;\nTallinn;Estonia");
+
+		List<List<String>> rows = readAll(csv, true);
+		assertEquals(5, rows.size());
+		// The byte order mark isn't part of the header
+		assertEquals(Arrays.asList("cityName", "cityCountry"), rows.get(0));
+		assertEquals(Arrays.asList("Vilnius", "Lithuania"), rows.get(1));
+		assertEquals(Arrays.asList(""), rows.get(2));
+		assertEquals(Arrays.asList("Riga", "Latvia", ""), rows.get(3));
+		assertEquals(Arrays.asList("Tallinn", "Estonia"), rows.get(4));
+		assertEquals(5, CityCsvReader.countRows(csv));
+		assertEquals(5, CityCsvReader.countRows(write("a\nb\nc\nd\ne\n")));
+	}
+
+	@Test
+	public void readingResumesAtRowOffset() throws IOException {
+		Path csv = write("cityName;cityCountry\r\nVilnius;Lithuania\r\nRiga;Latvia\r\nTallinn;Estonia");
+
+		long offset;
+		try (CityCsvReader reader = new CityCsvReader(csv, CityCsvReader.SEPARATOR, true, BUFFER_SIZE)) {
+			reader.next();
+			reader.next();
+			offset = reader.getBytesRead();
+			assertEquals("cityName;cityCountry\r\nVilnius;Lithuania\r\n".length(), offset);
+		}
+		try (CityCsvReader reader = new CityCsvReader(csv, CityCsvReader.SEPARATOR, true, BUFFER_SIZE)) {
+			reader.seek(offset, 1);
+			assertTrue(reader.next());
+			assertEquals(2, reader.getRow());
+			assertEquals("Riga", reader.getField(0));
+			assertTrue(reader.next());
+			assertEquals("Estonia", reader.getField(1));
+			assertEquals(Files.size(csv), reader.getBytesRead());
+			assertFalse(reader.next());
+		}
+	}
+
+	@Test
+	public void importSkipsRowsWhichAreNotCities() throws Exception {
+		TestDatabase.create();
+		TestDatabase.clear();
+		Path csv = write("cityName;cityCountry\r\n\"Vilnius\";\"Lithuania\"\r\nAlbania;Albania\r\nNo country\r\n"
+				+ "\r\n\"Foo; Bar\";Country\r\nVilnius;Lithuania\r\nRiga;Latvia");
+		StubGeocoder stub = new StubGeocoder();
+		CitiesDataImport cdi = new CitiesDataImport("");
+		cdi.setGeocoder(stub);
+
+		cdi.ReadCSV(csv.toString());
+		cdi.PersistData();
+
+		assertEquals(3, stub.getRequests());
+		assertEquals(0, cdi.getFailedRows());
+		assertEquals(3, TestDatabase.queryLong("SELECT COUNT(*) FROM CITY"));
+		assertEquals(1, TestDatabase.queryLong("SELECT COUNT(*) FROM CITY WHERE NAME = 'Foo; Bar'"));
+	}
+
+	private Path write(String content) throws IOException {
+		Path csv = folder.newFile().toPath();
+		Files.write(csv, content.getBytes(StandardCharsets.UTF_8));
+		return csv;
+	}
+
+	private static List<List<String>> readAll(Path csv, boolean quoted) throws IOException {
+		List<List<String>> rows = new ArrayList<>();
+		try (CityCsvReader reader = new CityCsvReader(csv, CityCsvReader.SEPARATOR, quoted, BUFFER_SIZE)) {
+			while (reader.next()) {
+				assertEquals(rows.size(), reader.getRow());
+				List<String> fields = new ArrayList<>();
+				for (int i = 0; i < reader.getFieldCount(); i++) {
+					fields.add(reader.getField(i));
+				}
+				rows.add(fields);
+			}
+		}
+		return rows;
+	}
+}
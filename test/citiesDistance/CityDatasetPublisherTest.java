@@ -0,0 +1,84 @@
+package citiesDistance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Imported chunks are published by {@link CityDatasetPublisher} once, sorted
+ * by the id, also when their ids are below the ids of the published cities.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class CityDatasetPublisherTest {
+	private static final int CITIES = 1000;
+
+	@Test
+	public void chunksAreMergedByIdWithoutDuplicates() throws InterruptedException {
+		// Every third id is free, as if the cities were deleted or imported later
+		CityDataset initial = TestCities.dataset(CITIES, 1);
+		for (int i = 0; i < CITIES; i++) {
+			initial.ids[i] = i / 2 * 3 + i % 2 + 1;
+		}
+		CityDatasetPublisher engine = new CityDatasetPublisher(initial, RTreeQueryEngine::new);
+
+		List<City> chunk = new ArrayList<>();
+		List<City> repeated = new ArrayList<>();
+		for (int i = 0; i < CITIES; i += 10) {
+			int free = i / 2 * 3 + 3;
+			chunk.add(city(free, initial.centreLat[i], initial.centreLon[i]));
+			// Already published
+			repeated.add(city(initial.ids[i + 1], 0, 0));
+		}
+		// A chunk delivered twice
+		repeated.addAll(chunk.subList(0, 10));
+		engine.append(chunk);
+		awaitVersion(engine, 1);
+		engine.append(repeated);
+		awaitVersion(engine, 2);
+
+		CityDataset published = engine.getDataset();
+		assertEquals(CITIES + chunk.size(), published.size());
+		int[] ids = Arrays.copyOf(published.ids, published.size());
+		for (int i = 1; i < ids.length; i++) {
+			assertTrue("Ids " + ids[i - 1] + " and " + ids[i] + " aren't ascending", ids[i - 1] < ids[i]);
+		}
+		for (City city : chunk) {
+			int i = Arrays.binarySearch(ids, city.getId());
+			assertTrue("City " + city.getId() + " isn't published", i >= 0);
+			assertEquals(city.getName(), published.getName(i));
+		}
+		// The repeated cities didn't replace the published ones
+		int i = Arrays.binarySearch(ids, initial.ids[1]);
+		assertEquals(initial.names[1], published.getName(i));
+
+		QueryResult result = new QueryResult();
+		City first = chunk.get(0);
+		engine.findContaining(first.getLocation().getLongitude(), first.getLocation().getLatitude(), result);
+		assertTrue(result.size() > 0);
+		assertEquals(first.getId(), result.getCityId(0));
+	}
+
+	private static void awaitVersion(CityDatasetPublisher engine, long version) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (engine.getVersion() < version && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(version, engine.getVersion());
+	}
+
+	private static City city(int id, double lat, double lon) {
+		City city = new City("imported:" + id, "Imported " + id, "Country",
+				new Bounds(new Coordinates(lat + 1e-4, lon + 1e-4), new Coordinates(lat - 1e-4, lon - 1e-4)),
+				new Location(lat, lon));
+		city.setId(id);
+		return city;
+	}
+}
@@ -0,0 +1,124 @@
+package citiesDistance;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A {@link CityDataset} read from a {@link CitySnapshot} equals the written
+ * one, and files which aren't complete snapshots of a supported version are
+ * rejected.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class CitySnapshotTest {
+	private static final int CITIES = 1000;
+	// Offsets of the header fields
+	private static final int VERSION = 4;
+	private static final int CHECKSUM = 24;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private CityDataset dataset;
+	private Path snapshot;
+
+	@Before
+	public void setUp() throws IOException {
+		dataset = TestCities.dataset(CITIES, 1);
+		dataset.names[1] = "\u0160iauliai";
+		dataset.names[2] = "";
+		dataset.names[3] = null;
+		dataset.countries[4] = null;
+		snapshot = folder.getRoot().toPath().resolve("snapshots").resolve("cities.snapshot");
+		CitySnapshot.write(dataset, snapshot);
+	}
+
+	@Test
+	public void readDatasetEqualsWrittenOne() throws IOException {
+		// The temporary file was moved over the snapshot
+		try (Stream<Path> files = Files.list(snapshot.getParent())) {
+			assertEquals(Arrays.asList(snapshot), files.collect(Collectors.toList()));
+		}
+
+		CityDataset read = CitySnapshot.read(snapshot);
+		assertEquals(CITIES, read.size());
+		assertArrayEquals(dataset.ids, read.ids);
+		assertArrayEquals(dataset.centreLat, read.centreLat, 0.0);
+		assertArrayEquals(dataset.centreLon, read.centreLon, 0.0);
+		assertArrayEquals(dataset.swLat, read.swLat, 0.0);
+		assertArrayEquals(dataset.swLon, read.swLon, 0.0);
+		assertArrayEquals(dataset.neLat, read.neLat, 0.0);
+		assertArrayEquals(dataset.neLon, read.neLon, 0.0);
+		for (int i = 0; i < CITIES; i++) {
+			if (i == 3) {
+				assertEquals("", read.getName(i));
+			} else if (i != 4) {
+				assertEquals(dataset.getName(i), read.getName(i));
+				assertEquals(dataset.getCountry(i), read.getCountry(i));
+			}
+		}
+		assertEquals("", read.getCountry(4));
+
+		CitySnapshot.write(new CityDataset(0), snapshot);
+		assertEquals(0, CitySnapshot.read(snapshot).size());
+	}
+
+	@Test
+	public void damagedSnapshotIsRejected() throws IOException {
+		byte[] valid = Files.readAllBytes(snapshot);
+
+		// A changed coordinate
+		byte[] changed = valid.clone();
+		changed[changed.length / 3] ^= 1;
+		assertRejected(changed, "Checksum");
+
+		assertRejected(Arrays.copyOf(valid, valid.length - 8), "truncated");
+		assertRejected(Arrays.copyOf(valid, valid.length + 8), "truncated");
+		assertRejected(Arrays.copyOf(valid, 20), "isn't a city snapshot");
+		assertRejected(new byte[valid.length], "isn't a city snapshot");
+		byte[] version = valid.clone();
+		header(version).putInt(VERSION, CitySnapshot.VERSION + 1);
+		assertRejected(version, "Unsupported city snapshot version");
+	}
+
+	@Test
+	public void snapshotWithoutChecksumIsRead() throws IOException {
+		byte[] bytes = Files.readAllBytes(snapshot);
+		header(bytes).putInt(VERSION, 1).putInt(CHECKSUM, 0);
+		Files.write(snapshot, bytes);
+
+		assertArrayEquals(dataset.ids, CitySnapshot.read(snapshot).ids);
+	}
+
+	private void assertRejected(byte[] bytes, String message) throws IOException {
+		Files.write(snapshot, bytes);
+		try {
+			CitySnapshot.read(snapshot);
+			fail("Read a damaged snapshot, expected: " + message);
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(message));
+		}
+	}
+
+	private static ByteBuffer header(byte[] bytes) {
+		return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+}
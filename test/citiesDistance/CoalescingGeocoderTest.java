@@ -0,0 +1,188 @@
+package citiesDistance;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Concurrent identical requests of {@link CoalescingGeocoder} share one
+ * request to the service, and only the final failures are cached.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class CoalescingGeocoderTest {
+	private static final int CALLERS = 16;
+
+	private final Metrics.Counter coalesced = Metrics.counter("import.responses.coalesced");
+	private final StubGeocoder stub = new StubGeocoder();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private ExecutorService callers;
+
+	@Before
+	public void setUp() {
+		Metrics.setEnabled(true);
+		callers = Executors.newFixedThreadPool(CALLERS);
+	}
+
+	@After
+	public void tearDown() {
+		callers.shutdownNow();
+	}
+
+	@Test
+	public void concurrentIdenticalRequestsShareOneResponse() throws Exception {
+		CoalescingGeocoder geocoder = new CoalescingGeocoder((cityName, countryName) -> {
+			awaitRelease();
+			return stub.geocode(cityName, countryName);
+		});
+
+		List<Future<byte[]>> responses = callConcurrently(geocoder, "Vilnius", "Lithuania");
+
+		assertEquals(1, stub.getRequests());
+		byte[] first = responses.get(0).get();
+		assertArrayEquals(stub.geocode("Vilnius", "Lithuania"), first);
+		for (Future<byte[]> response : responses) {
+			assertSame(first, response.get());
+		}
+	}
+
+	@Test
+	public void concurrentIdenticalRequestsShareOneError() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		CoalescingGeocoder geocoder = new CoalescingGeocoder((cityName, countryName) -> {
+			calls.incrementAndGet();
+			awaitRelease();
+			throw new IOException("Connection reset");
+		});
+
+		List<Future<byte[]>> responses = callConcurrently(geocoder, "Vilnius", "Lithuania");
+
+		assertEquals(1, calls.get());
+		for (Future<byte[]> response : responses) {
+			try {
+				response.get();
+				fail("The error of the request wasn't passed to every caller");
+			} catch (ExecutionException e) {
+				assertEquals("Connection reset", e.getCause().getMessage());
+			}
+		}
+		// Errors of the service aren't cached, the next request may succeed
+		try {
+			geocoder.geocode("Vilnius", "Lithuania");
+			fail("The request wasn't sent again");
+		} catch (IOException e) {
+			assertEquals(2, calls.get());
+		}
+	}
+
+	@Test
+	public void concurrentIdenticalRequestsShareOneThrownError() throws Exception {
+		CoalescingGeocoder geocoder = new CoalescingGeocoder((cityName, countryName) -> {
+			awaitRelease();
+			throw new OutOfMemoryError("Response too large");
+		});
+
+		List<Future<byte[]>> responses = callConcurrently(geocoder, "Vilnius", "Lithuania");
+
+		for (Future<byte[]> response : responses) {
+			try {
+				response.get();
+				fail("The error of the request wasn't passed to every caller");
+			} catch (ExecutionException e) {
+				assertEquals("Response too large", e.getCause().getMessage());
+			}
+		}
+	}
+
+	@Test
+	public void finalFailuresAreCachedAndEvicted() throws IOException {
+		CoalescingGeocoder geocoder = new CoalescingGeocoder(stub, 2);
+
+		byte[] unknown = geocoder.geocode(StubGeocoder.UNKNOWN + " 1", null);
+		assertSame(unknown, geocoder.geocode(StubGeocoder.UNKNOWN + " 1", null));
+		assertEquals(1, stub.getRequests());
+
+		geocoder.geocode(StubGeocoder.UNKNOWN + " 2", null);
+		// Makes the first failure the most recently used one
+		geocoder.geocode(StubGeocoder.UNKNOWN + " 1", null);
+		geocoder.geocode(StubGeocoder.UNKNOWN + " 3", null);
+		assertEquals(3, stub.getRequests());
+		assertEquals(2, geocoder.getNegativeCacheSize());
+
+		geocoder.geocode(StubGeocoder.UNKNOWN + " 1", null);
+		assertEquals(3, stub.getRequests());
+		geocoder.geocode(StubGeocoder.UNKNOWN + " 2", null);
+		assertEquals(4, stub.getRequests());
+	}
+
+	@Test
+	public void successfulResponsesAreNotCached() throws IOException {
+		CoalescingGeocoder geocoder = new CoalescingGeocoder(stub);
+
+		geocoder.geocode("Vilnius", "Lithuania");
+		geocoder.geocode("Vilnius", "Lithuania");
+
+		assertEquals(2, stub.getRequests());
+		assertEquals(0, geocoder.getNegativeCacheSize());
+	}
+
+	/**
+	 * Sends the same request from every caller and lets the service answer once
+	 * all callers but the first one wait for its response
+	 */
+	private List<Future<byte[]>> callConcurrently(Geocoder geocoder, String cityName, String countryName)
+			throws InterruptedException {
+		long waiting = coalesced.getCount();
+		List<Future<byte[]>> responses = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++) {
+			responses.add(callers.submit(() -> geocoder.geocode(cityName, countryName)));
+		}
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (coalesced.getCount() - waiting < CALLERS - 1) {
+			if (System.nanoTime() > deadline) {
+				fail("Only " + (coalesced.getCount() - waiting) + " callers joined the running request");
+			}
+			Thread.sleep(1);
+		}
+		release.countDown();
+		for (Future<byte[]> response : responses) {
+			try {
+				response.get(10, TimeUnit.SECONDS);
+			} catch (ExecutionException e) {
+				// Checked by the test
+			} catch (Exception e) {
+				fail("A caller didn't finish: " + e);
+			}
+		}
+		return responses;
+	}
+
+	private void awaitRelease() throws IOException {
+		try {
+			if (!release.await(10, TimeUnit.SECONDS)) {
+				throw new IOException("The test didn't release the request");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+}
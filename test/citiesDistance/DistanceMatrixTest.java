@@ -0,0 +1,85 @@
+package citiesDistance;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * The rows streamed by {@link DistanceMatrix#forEachRow} equal the rows of the
+ * full matrix and the distances of {@link DistanceCalculator}, although every
+ * worker reuses its row buffer.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class DistanceMatrixTest {
+	// More than one tile of cities, the last one partial
+	private static final int CITIES = DistanceMatrix.CITY_TILE * 2 + 100;
+	// Several point tiles, the last one partial
+	private static final int POINTS = DistanceMatrix.POINT_TILE * 12 + 5;
+
+	private final ForkJoinPool pool = new ForkJoinPool(4);
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void streamedRowsEqualMatrix() {
+		CityDataset dataset = TestCities.dataset(CITIES, 1);
+		double[][] points = points(dataset, 2);
+		DistanceMatrix distanceMatrix = new DistanceMatrix(dataset, pool);
+
+		double[][] matrix = distanceMatrix.compute(points[1], points[0]);
+		double[][] streamed = new double[POINTS][];
+		distanceMatrix.forEachRow(points[1], points[0], (point, distances) -> {
+			assertNull("Row " + point + " was delivered twice", streamed[point]);
+			streamed[point] = distances.clone();
+		});
+
+		assertEquals(POINTS, matrix.length);
+		for (int point = 0; point < POINTS; point++) {
+			assertNotNull("Row " + point + " wasn't delivered", streamed[point]);
+			assertArrayEquals("Row " + point, matrix[point], streamed[point], 0.0);
+		}
+
+		Random random = new Random(3);
+		for (int i = 0; i < 20; i++) {
+			int point = random.nextInt(POINTS);
+			int city = random.nextInt(CITIES);
+			double expected = DistanceCalculator.getDistanceFromBounds(
+					new Coordinates(points[0][point], points[1][point]), TestCities.bounds(dataset, city));
+			assertEquals("Point " + point + ", city " + city, expected, streamed[point][city], 0.0);
+		}
+		// Points at a city centre are inside its bounds
+		assertEquals(0.0, matrix[0][0], 0.0);
+	}
+
+	/**
+	 * @return Latitudes and longitudes of random points, every tenth one at the
+	 *         centre of a city
+	 */
+	private static double[][] points(CityDataset dataset, long seed) {
+		Random random = new Random(seed);
+		double[][] points = new double[2][POINTS];
+		for (int i = 0; i < POINTS; i++) {
+			if (i % 10 == 0) {
+				points[0][i] = dataset.centreLat[i];
+				points[1][i] = dataset.centreLon[i];
+			} else {
+				points[0][i] = random.nextDouble() * 180 - 90;
+				points[1][i] = random.nextDouble() * 360 - 180;
+			}
+		}
+		return points;
+	}
+}
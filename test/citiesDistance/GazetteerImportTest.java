@@ -0,0 +1,113 @@
+package citiesDistance;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The {@link GazetteerImport} imports the populated places of a GeoNames dump
+ * once, with the bounds of the extra columns or estimated ones, and the ids it
+ * uses aren't allocated again by the persistence unit.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class GazetteerImportTest {
+	private static final int PLACES = 25;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path dump;
+
+	@Before
+	public void setUp() throws Exception {
+		TestDatabase.create();
+		TestDatabase.clear();
+
+		List<String> rows = new ArrayList<>();
+		for (int i = 0; i < PLACES; i++) {
+			String bounds = i % 2 == 0 ? "" : "\t" + (50 + i - 0.1) + "\t" + (20 + i - 0.2) + "\t" + (50 + i + 0.1)
+					+ "\t" + (20 + i + 0.2);
+			rows.add(row(1000 + i, "Place " + i, "P", 50 + i, 20 + i, i % 3 == 0 ? "" : "250000") + bounds);
+		}
+		// Not populated places
+		rows.add(row(2000, "Mountain", "T", 45, 7, ""));
+		rows.add(row(2001, "Lake", "H", 46, 8, ""));
+		// Invalid rows
+		rows.add(row(2002, "Nowhere", "P", 0, 0, "").replace("\t0.0\t0.0\t", "\tnorth\t0.0\t"));
+		rows.add("2003\tShort row\tP");
+		rows.add("");
+		// The same place twice
+		rows.add(row(1000, "Place 0", "P", 50, 20, ""));
+		dump = folder.getRoot().toPath().resolve("allCountries.txt");
+		Files.write(dump, rows, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void populatedPlacesAreImportedOnce() throws Exception {
+		List<City> published = new ArrayList<>();
+		GazetteerImport gazetteer = new GazetteerImport();
+		gazetteer.setChunkSize(10);
+		gazetteer.setPersistListener(published::addAll);
+
+		assertEquals(PLACES, gazetteer.importFile(dump));
+		assertEquals(6, gazetteer.getSkippedRows());
+		assertEquals(PLACES, published.size());
+		assertEquals(PLACES, TestDatabase.queryLong("SELECT COUNT(*) FROM CITY WHERE PLACEID LIKE 'geonames:%'"));
+		assertEquals(PLACES, TestDatabase.queryLong("SELECT COUNT(*) FROM " + CityBoundsIndex.TABLE));
+		assertEquals(PLACES, TestDatabase.queryLong("SELECT COUNT(*) FROM CITY WHERE COUNTRY = 'Lithuania'"));
+		// Read from the bounds columns
+		assertEquals(1, TestDatabase.queryLong("SELECT COUNT(*) FROM CITY WHERE PLACEID = 'geonames:1001'"
+				+ " AND SW_LATITUDE = 50.9 AND SW_LONGITUDE = 20.8 AND NE_LATITUDE = 51.1 AND NE_LONGITUDE = 21.2"));
+		// Estimated from the population, at least 1 km around the centre
+		assertEquals(1, TestDatabase.queryLong("SELECT COUNT(*) FROM CITY WHERE PLACEID = 'geonames:1000'"
+				+ " AND SW_LATITUDE < 50 AND NE_LATITUDE > 50 AND SW_LONGITUDE < 20 AND NE_LONGITUDE > 20"));
+		// The dropped index is built again
+		assertEquals(1, TestDatabase.queryLong(
+				"SELECT COUNT(*) FROM sqlite_master WHERE name = '" + City.NAME_COUNTRY_INDEX + "'"));
+
+		// Running the import again imports nothing
+		assertEquals(0, gazetteer.importFile(dump));
+		assertEquals(PLACES + 6, gazetteer.getSkippedRows());
+		assertEquals(PLACES, TestDatabase.queryLong("SELECT COUNT(*) FROM CITY"));
+
+		// The persistence unit doesn't allocate the imported ids again
+		CitiesDataImport cdi = new CitiesDataImport("");
+		City city = new City("test:vilnius", "Vilnius", "Lithuania",
+				new Bounds(new Coordinates(54.83, 25.48), new Coordinates(54.57, 25.02)), new Location(54.69, 25.28));
+		cdi.cityList.add(city);
+		cdi.PersistData();
+		assertEquals(PLACES + 1, TestDatabase.queryLong("SELECT COUNT(*) FROM CITY"));
+		assertEquals(1, TestDatabase.queryLong(
+				"SELECT COUNT(*) FROM CITY WHERE ID = " + city.getId() + " AND PLACEID = 'test:vilnius'"));
+	}
+
+	@Test
+	public void boundsAreNotIndexedWhenTurnedOff() throws Exception {
+		GazetteerImport gazetteer = new GazetteerImport();
+		gazetteer.setIndexBounds(false);
+
+		assertEquals(PLACES, gazetteer.importFile(dump));
+		assertEquals(PLACES, TestDatabase.queryLong("SELECT COUNT(*) FROM CITY"));
+		assertEquals(0, TestDatabase.queryLong("SELECT COUNT(*) FROM " + CityBoundsIndex.TABLE));
+	}
+
+	/**
+	 * @return Row of the GeoNames dump, in Lithuania
+	 */
+	private static String row(int id, String name, String featureClass, double lat, double lon, String population) {
+		return id + "\t" + name + "\t" + name + "\t\t" + lat + "\t" + lon + "\t" + featureClass + "\tPPL\tLT\t\t00\t\t\t\t"
+				+ population + "\t\t100\tEurope/Vilnius\t2020-01-01";
+	}
+}
@@ -0,0 +1,89 @@
+package citiesDistance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+/**
+ * The {@link GeocodeResponseParser} reads the city of a valid response, with
+ * or without the bounds element, and rejects responses without a result or
+ * with a broken structure.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class GeocodeResponseParserTest {
+	private final GeocodeResponseParser parser = new GeocodeResponseParser();
+
+	@Test
+	public void validResponseIsParsed() throws XMLStreamException {
+		City city = parse(GeocodeResponses.response("Vilnius", 1, true));
+		City fromViewport = parse(GeocodeResponses.response("Vilnius", 1, false));
+
+		assertEquals("Vilnius", city.getName());
+		assertEquals("Lithuania", city.getCountry());
+		assertTrue(city.getPlaceId().startsWith("ChIJ"));
+		Coordinates southWest = city.getBounds().getSouthWest();
+		Coordinates northEast = city.getBounds().getNorthEast();
+		double lat = city.getLocation().getLatitude();
+		double lon = city.getLocation().getLongitude();
+		assertTrue(southWest.getLatitude() < lat && lat < northEast.getLatitude());
+		assertTrue(southWest.getLongitude() < lon && lon < northEast.getLongitude());
+
+		// The viewport is used when there are no bounds
+		assertEquals(city.getPlaceId(), fromViewport.getPlaceId());
+		assertEquals(southWest.getLatitude(), fromViewport.getBounds().getSouthWest().getLatitude(), 0.0);
+		assertEquals(northEast.getLongitude(), fromViewport.getBounds().getNorthEast().getLongitude(), 0.0);
+		assertEquals(lat, fromViewport.getLocation().getLatitude(), 0.0);
+	}
+
+	@Test
+	public void responsesWithoutResultAreRejected() {
+		assertRejected(GeocodeResponses.status("ZERO_RESULTS"));
+		assertRejected(GeocodeResponses.status("OVER_QUERY_LIMIT"));
+	}
+
+	@Test
+	public void malformedResponsesAreRejected() {
+		String valid = new String(GeocodeResponses.response("Vilnius", 1, true), StandardCharsets.UTF_8);
+
+		// Not well-formed
+		assertRejected(valid.substring(0, valid.length() / 2));
+		assertRejected(valid.replace("</geometry>", ""));
+		// Another document
+		assertRejected(valid.replace("GeocodeResponse>", "DirectionsResponse>"));
+		// Elements out of order or missing
+		assertRejected(valid.replace("<formatted_address>Vilnius</formatted_address>", "")
+				.replace("</address_component>\n<geometry>",
+						"</address_component>\n<formatted_address>Vilnius</formatted_address>\n<geometry>"));
+		assertRejected(valid.replaceAll("<place_id>.*</place_id>", ""));
+		assertRejected(valid.replaceAll("(?s)<location>.*</location>", ""));
+		// Coordinates which aren't numbers
+		assertRejected(valid.replaceFirst("<lat>[^<]*</lat>", "<lat>north</lat>"));
+	}
+
+	private City parse(byte[] response) throws XMLStreamException {
+		return parser.parse(new ByteArrayInputStream(response), "Vilnius", "Lithuania");
+	}
+
+	private void assertRejected(String response) {
+		assertRejected(response.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void assertRejected(byte[] response) {
+		try {
+			City city = parse(response);
+			fail("Parsed " + city + " from " + new String(response, StandardCharsets.UTF_8));
+		} catch (XMLStreamException e) {
+			// Expected
+		}
+	}
+}
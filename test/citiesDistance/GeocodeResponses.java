@@ -0,0 +1,58 @@
+package citiesDistance;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Deterministic generator of Google Maps API geocode XML responses, so the
+ * tests and the benchmarks don't need network access
+ * 
+ * @author Rolandas
+ *
+ */
+
+public final class GeocodeResponses {
+
+	private GeocodeResponses() {
+	}
+
+	/**
+	 * @param seed     Seed of the generated coordinates
+	 * @param withBounds Include the optional bounds element, otherwise only the
+	 *                 viewport is present
+	 * @return UTF-8 bytes of the response
+	 */
+	public static byte[] response(String cityName, long seed, boolean withBounds) {
+		Random random = new Random(seed);
+		double lat = 35 + random.nextDouble() * 30;
+		double lng = -10 + random.nextDouble() * 40;
+		double height = 0.02 + random.nextDouble() * 0.2;
+		double width = 0.02 + random.nextDouble() * 0.3;
+
+		String box = "<southwest>\n<lat>" + (lat - height) + "</lat>\n<lng>" + (lng - width) + "</lng>\n</southwest>\n"
+				+ "<northeast>\n<lat>" + (lat + height) + "</lat>\n<lng>" + (lng + width) + "</lng>\n</northeast>\n";
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<GeocodeResponse>\n<status>OK</status>\n<result>\n"
+				+ "<type>locality</type>\n<type>political</type>\n<formatted_address>" + cityName
+				+ "</formatted_address>\n"
+				+ "<address_component>\n<long_name>" + cityName + "</long_name>\n<short_name>" + cityName
+				+ "</short_name>\n<type>locality</type>\n<type>political</type>\n</address_component>\n"
+				+ "<address_component>\n<long_name>Country</long_name>\n<short_name>CC</short_name>\n"
+				+ "<type>country</type>\n<type>political</type>\n</address_component>\n"
+				+ "<geometry>\n<location>\n<lat>" + lat + "</lat>\n<lng>" + lng + "</lng>\n</location>\n"
+				+ "<location_type>APPROXIMATE</location_type>\n<viewport>\n" + box + "</viewport>\n"
+				+ (withBounds ? "<bounds>\n" + box + "</bounds>\n" : "") + "</geometry>\n"
+				+ "<place_id>ChIJ" + Long.toHexString(random.nextLong()) + "</place_id>\n</result>\n"
+				+ "</GeocodeResponse>\n";
+		return xml.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param status Status of a response without results, such as ZERO_RESULTS
+	 * @return UTF-8 bytes of the response
+	 */
+	public static byte[] status(String status) {
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<GeocodeResponse>\n<status>" + status
+				+ "</status>\n</GeocodeResponse>\n";
+		return xml.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,102 @@
+package citiesDistance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The {@link GeohashResultCache} returns the same closest cities as the
+ * uncached in-memory engine, also after the dataset was replaced.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class GeohashResultCacheTest {
+	private static final int CITIES = 5000;
+	private static final int HOT_SPOTS = 20;
+	private static final int POINTS = 400;
+
+	@Test
+	public void cachedResultsEqualUncachedResults() {
+		CityDatasetPublisher engine = new CityDatasetPublisher(TestCities.dataset(CITIES, 1), RTreeQueryEngine::new);
+		double[][] points = clusteredPoints(2);
+		for (int precision = 4; precision <= 7; precision++) {
+			for (int limit : new int[] { 1, 10, 50 }) {
+				for (int searchRadius : new int[] { 50, 20000 }) {
+					GeohashResultCache cache = new GeohashResultCache(engine, 10000, precision);
+					assertSameResults(engine, cache, points, searchRadius, limit);
+					assertTrue("No lookup was answered from the cache", cache.getHits() > 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void cellsOfReplacedDatasetAreNotReturned() throws InterruptedException {
+		CityDataset initial = TestCities.dataset(CITIES, 3);
+		CityDatasetPublisher engine = new CityDatasetPublisher(initial, RTreeQueryEngine::new);
+		GeohashResultCache cache = new GeohashResultCache(engine, 10000, 7);
+		double[][] points = clusteredPoints(4);
+		assertSameResults(engine, cache, points, 20000, 10);
+
+		// One city right at every point, so every cached cell changes
+		List<City> chunk = new ArrayList<>();
+		for (int i = 0; i < POINTS; i++) {
+			double lat = points[0][i], lon = points[1][i];
+			City city = new City("imported:" + i, "Imported " + i, "Country",
+					new Bounds(new Coordinates(lat + 1e-4, lon + 1e-4), new Coordinates(lat - 1e-4, lon - 1e-4)),
+					new Location(lat, lon));
+			city.setId(CITIES + i + 1);
+			chunk.add(city);
+		}
+		engine.append(chunk);
+		long deadline = System.currentTimeMillis() + 10000;
+		while (engine.getVersion() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(1, engine.getVersion());
+
+		assertSameResults(engine, cache, points, 20000, 10);
+		QueryResult result = new QueryResult();
+		cache.findClosest(points[1][0], points[0][0], 20000, 10, result);
+		assertEquals(0.0, result.getDistance(0), 0.0);
+	}
+
+	private static void assertSameResults(DistanceQueryEngine engine, GeohashResultCache cache, double[][] points,
+			int searchRadius, int limit) {
+		QueryResult expected = new QueryResult();
+		QueryResult actual = new QueryResult();
+		for (int i = 0; i < POINTS; i++) {
+			engine.findClosest(points[1][i], points[0][i], searchRadius, limit, expected);
+			cache.findClosest(points[1][i], points[0][i], searchRadius, limit, actual);
+			TestCities.assertSameResults("Point " + i + ", radius " + searchRadius + ", limit " + limit, expected,
+					actual, limit);
+		}
+	}
+
+	/**
+	 * @return Latitudes and longitudes of points in small areas around a few hot
+	 *         spots, which is the traffic the cache is meant for
+	 */
+	private static double[][] clusteredPoints(long seed) {
+		Random random = new Random(seed);
+		double[][] spots = new double[2][HOT_SPOTS];
+		for (int i = 0; i < HOT_SPOTS; i++) {
+			spots[0][i] = i % 5 == 0 ? random.nextDouble() * 170 - 85 : 35 + random.nextDouble() * 30;
+			spots[1][i] = i % 5 == 0 ? 179.99 : -10 + random.nextDouble() * 40;
+		}
+		double[][] points = new double[2][POINTS];
+		for (int i = 0; i < POINTS; i++) {
+			int spot = random.nextInt(HOT_SPOTS);
+			points[0][i] = Math.max(Math.min(spots[0][spot] + random.nextGaussian() * 0.002, 90), -90);
+			points[1][i] = Math.max(Math.min(spots[1][spot] + random.nextGaussian() * 0.002, 180), -180);
+		}
+		return points;
+	}
+}
@@ -0,0 +1,108 @@
+package citiesDistance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * An import which stops halfway resumes from its {@link ImportJournal}: the
+ * finished rows aren't downloaded again, the geocoded cities which weren't
+ * committed are saved from the journal, and no city is saved twice.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class ImportResumeTest {
+	private static final int CITIES = 300;
+	private static final int BATCH_SIZE = 40;
+	// Successful requests before the connection of the first import is lost
+	private static final int INTERRUPTED_AFTER = 130;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path csv;
+	private Path journalPath;
+	private String checksum;
+
+	@Before
+	public void setUp() throws Exception {
+		TestDatabase.create();
+		TestDatabase.clear();
+
+		List<String> rows = new ArrayList<>();
+		rows.add("cityName;cityCountry");
+		for (int i = 0; i < CITIES; i++) {
+			rows.add("City " + i + ";Country " + i % 7);
+			if (i == 20) {
+				rows.add("Albania;Albania");
+			}
+			if (i == 200) {
+				rows.add("City 3;Country 3");
+			}
+		}
+		csv = folder.getRoot().toPath().resolve("cities.csv");
+		Files.write(csv, rows, StandardCharsets.UTF_8);
+		journalPath = folder.getRoot().toPath().resolve("import.journal");
+		checksum = ImportChecksum.compute(csv);
+	}
+
+	@Test
+	public void interruptedImportResumesWithoutRepeatingFinishedRows() throws Exception {
+		StubGeocoder stub = new StubGeocoder();
+		AtomicInteger requests = new AtomicInteger();
+		ImportJournal interruptedJournal = ImportJournal.open(journalPath, checksum);
+		try {
+			CitiesDataImport interrupted = newImport(interruptedJournal, (cityName, countryName) -> {
+				if (requests.incrementAndGet() > INTERRUPTED_AFTER) {
+					throw new IOException("Connection lost");
+				}
+				return stub.geocode(cityName, countryName);
+			});
+			interrupted.ReadCSV(csv.toString());
+			// Stops like a killed process: the last chunk isn't saved and the journal
+			// isn't closed
+			assertEquals(INTERRUPTED_AFTER, stub.getRequests());
+			long saved = TestDatabase.queryLong("SELECT COUNT(*) FROM CITY");
+			assertEquals(INTERRUPTED_AFTER / BATCH_SIZE * BATCH_SIZE, saved);
+
+			StubGeocoder resumedStub = new StubGeocoder();
+			ImportJournal journal = ImportJournal.open(journalPath, checksum);
+			assertTrue(journal.getCheckpointRow() > 0);
+			CitiesDataImport resumed = newImport(journal, resumedStub);
+			resumed.ReadCSV(csv.toString());
+			resumed.PersistData();
+			journal.delete();
+
+			assertEquals(0, resumed.getFailedRows());
+			assertEquals(CITIES - INTERRUPTED_AFTER, resumedStub.getRequests());
+			assertEquals(CITIES, TestDatabase.queryLong("SELECT COUNT(*) FROM CITY"));
+			assertEquals(CITIES, TestDatabase.queryLong("SELECT COUNT(DISTINCT NAME) FROM CITY"));
+		} finally {
+			// Releases the file of the abandoned journal
+			interruptedJournal.close();
+		}
+	}
+
+	private static CitiesDataImport newImport(ImportJournal journal, Geocoder geocoder) {
+		CitiesDataImport cdi = new CitiesDataImport("");
+		cdi.setGeocoder(geocoder);
+		cdi.setJournal(journal);
+		cdi.setBatchSize(BATCH_SIZE);
+		cdi.setConcurrency(4);
+		return cdi;
+	}
+}
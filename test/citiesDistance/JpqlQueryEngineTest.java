@@ -0,0 +1,108 @@
+package citiesDistance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The {@link JpqlQueryEngine} finds the same cities as a scan of every city,
+ * also when the search circle crosses the antimeridian.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class JpqlQueryEngineTest {
+	private static final int CITIES = 1500;
+	private static final int POINTS = 200;
+	// Distances calculated by SQLite and by Java may differ by rounding
+	private static final double TOLERANCE = 1e-3;
+
+	private final List<City> cities = new ArrayList<>();
+	private EntityManager entityManager;
+	private JpqlQueryEngine engine;
+
+	@Before
+	public void setUp() throws Exception {
+		TestDatabase.create();
+		TestDatabase.clear();
+
+		Random random = new Random(1);
+		CitiesDataImport cdi = new CitiesDataImport("");
+		for (int i = 0; i < CITIES; i++) {
+			double lat = random.nextDouble() * 120 - 60;
+			double lon;
+			if (i % 3 == 2) {
+				lon = random.nextDouble() * 360 - 180;
+			} else {
+				lon = random.nextBoolean() ? 175 + random.nextDouble() * 5 : -180 + random.nextDouble() * 5;
+			}
+			double height = 0.01 + random.nextDouble() * 0.2;
+			double width = 0.01 + random.nextDouble() * 0.3;
+			// Bounds of the cities at the antimeridian cross it
+			double swLon = GeoUtils.wrapLongitude(lon - width / 2);
+			double neLon = GeoUtils.wrapLongitude(lon + width / 2);
+			City city = new City("test:" + i, "City " + i, "Country " + i % 7,
+					new Bounds(new Coordinates(lat + height / 2, neLon), new Coordinates(lat - height / 2, swLon)),
+					new Location(lat, lon));
+			cdi.cityList.add(city);
+			cities.add(city);
+		}
+		cdi.PersistData();
+
+		entityManager = CitiesPersistence.getFactory().createEntityManager();
+		engine = new JpqlQueryEngine(entityManager, CitiesPersistence.getStatementCounter());
+	}
+
+	@After
+	public void tearDown() {
+		entityManager.close();
+	}
+
+	@Test
+	public void searchAcrossAntimeridianEqualsScan() {
+		Random random = new Random(2);
+		QueryResult result = new QueryResult();
+		for (int i = 0; i < POINTS; i++) {
+			double lat = random.nextDouble() * 120 - 60;
+			double lon = i % 10 == 0 ? random.nextDouble() * 360 - 180
+					: (random.nextBoolean() ? 1 : -1) * (179 + random.nextDouble());
+			for (int searchRadius : new int[] { 50, 300, 2000 }) {
+				String query = "Point " + lat + ", " + lon + ", radius " + searchRadius;
+				engine.findClosest(lon, lat, searchRadius, CITIES, result);
+				Set<Integer> found = new HashSet<>();
+				for (int k = 0; k < result.size(); k++) {
+					found.add(result.getCityId(k));
+				}
+				assertEquals(query, 1, result.getStatementCount());
+				assertEquals(query, found.size(), result.size());
+
+				int expected = 0;
+				for (City city : cities) {
+					double distance = GeoUtils.haversine(lat, lon, city.getLocation().getLatitude(),
+							city.getLocation().getLongitude());
+					if (distance < searchRadius - TOLERANCE) {
+						assertTrue(query + ", missing " + city, found.contains(city.getId()));
+						expected++;
+					} else if (distance > searchRadius + TOLERANCE) {
+						assertTrue(query + ", too far " + city, !found.contains(city.getId()));
+					} else if (found.contains(city.getId())) {
+						expected++;
+					}
+				}
+				assertEquals(query, expected, result.size());
+			}
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package citiesDistance;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The best-first search of the {@link RTreeQueryEngine} finds the same closest
+ * cities in the same order as ranking every city by
+ * {@link DistanceCalculator#getDistanceFromBounds(Coordinates, Bounds)}.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class RTreeQueryEngineTest {
+	private static final int CITIES = 3000;
+	private static final int POINTS = 300;
+
+	@Test
+	public void closestCitiesEqualBruteForce() {
+		CityDataset dataset = TestCities.dataset(CITIES, 1);
+		// Cities with the same bounds as the one before them are at the same
+		// distance from every point
+		for (int i = 5; i < CITIES; i += 20) {
+			dataset.swLat[i] = dataset.swLat[i - 1];
+			dataset.swLon[i] = dataset.swLon[i - 1];
+			dataset.neLat[i] = dataset.neLat[i - 1];
+			dataset.neLon[i] = dataset.neLon[i - 1];
+		}
+		RTreeQueryEngine engine = new RTreeQueryEngine(dataset);
+
+		Random random = new Random(2);
+		QueryResult expected = new QueryResult();
+		QueryResult actual = new QueryResult();
+		for (int i = 0; i < POINTS; i++) {
+			double lat, lon;
+			if (i % 3 == 0) {
+				lat = random.nextDouble() * 180 - 90;
+				lon = random.nextDouble() * 360 - 180;
+			} else {
+				// Inside the bounds of a city with a twin, so several are at 0 km
+				int city = i % 3 == 1 ? 5 + random.nextInt(CITIES / 20) * 20 : random.nextInt(CITIES);
+				lat = dataset.centreLat[city];
+				lon = dataset.centreLon[city];
+			}
+			for (int limit : new int[] { 1, 2, 10, 100 }) {
+				for (int searchRadius : new int[] { 20, 500, 20000 }) {
+					engine.findClosest(lon, lat, searchRadius, limit, actual);
+					bruteForce(dataset, lon, lat, searchRadius, limit, expected);
+					TestCities.assertSameResults("Point " + lat + ", " + lon + ", radius " + searchRadius
+							+ ", limit " + limit, expected, actual, limit);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void limitAboveSizeReturnsEveryCity() {
+		CityDataset dataset = TestCities.dataset(40, 3);
+		RTreeQueryEngine engine = new RTreeQueryEngine(dataset);
+		QueryResult expected = new QueryResult();
+		QueryResult actual = new QueryResult();
+
+		engine.findClosest(25, 50, 20040, 1000, actual);
+		bruteForce(dataset, 25, 50, 20040, 1000, expected);
+		assertEquals(40, actual.size());
+		TestCities.assertSameResults("Limit above size", expected, actual, 1000);
+
+		engine = new RTreeQueryEngine(new CityDataset(0));
+		engine.findClosest(25, 50, 20040, 10, actual);
+		assertEquals(0, actual.size());
+	}
+
+	/**
+	 * Ranks every city by the distance from its bounds
+	 */
+	private static void bruteForce(CityDataset dataset, double lon, double lat, int searchRadius, int limit,
+			QueryResult result) {
+		Coordinates point = new Coordinates(lat, lon);
+		double[] distances = new double[dataset.size];
+		List<Integer> cities = new ArrayList<>();
+		for (int i = 0; i < dataset.size; i++) {
+			distances[i] = DistanceCalculator.getDistanceFromBounds(point, TestCities.bounds(dataset, i));
+			if (distances[i] <= searchRadius) {
+				cities.add(i);
+			}
+		}
+		cities.sort((a, b) -> Double.compare(distances[a], distances[b]));
+		result.clear();
+		for (int i : cities.subList(0, Math.min(cities.size(), limit))) {
+			result.add(dataset.ids[i], dataset.names[i], dataset.countries[i], distances[i]);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package citiesDistance;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The {@link ScanQueryEngine} returns the same closest cities as the
+ * {@link RTreeQueryEngine}, also for the points near the poles and the
+ * antimeridian, where the lower bound of the scan is the loosest.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class ScanQueryEngineTest {
+	// Several blocks, the last one partial
+	private static final int CITIES = ScanQueryEngine.BLOCK * 3 + 37;
+	private static final int POINTS = 600;
+
+	@Test
+	public void scanEqualsRTree() {
+		CityDataset dataset = TestCities.dataset(CITIES, 1);
+		ScanQueryEngine scan = new ScanQueryEngine(dataset);
+		RTreeQueryEngine rtree = new RTreeQueryEngine(dataset);
+
+		Random random = new Random(2);
+		QueryResult expected = new QueryResult();
+		QueryResult actual = new QueryResult();
+		for (int i = 0; i < POINTS; i++) {
+			double lat, lon;
+			switch (i % 5) {
+			case 0:
+				// Near or at a pole
+				lat = (random.nextBoolean() ? 1 : -1) * (i % 25 == 0 ? 90 : 85 + random.nextDouble() * 5);
+				lon = random.nextDouble() * 360 - 180;
+				break;
+			case 1:
+				lat = random.nextDouble() * 170 - 85;
+				lon = random.nextBoolean() ? 180 - random.nextDouble() : -180 + random.nextDouble();
+				break;
+			case 2:
+				int city = random.nextInt(CITIES);
+				lat = dataset.centreLat[city];
+				lon = dataset.centreLon[city];
+				break;
+			default:
+				lat = random.nextDouble() * 180 - 90;
+				lon = random.nextDouble() * 360 - 180;
+			}
+			for (int limit : new int[] { 1, 10, 100 }) {
+				for (int searchRadius : new int[] { 50, 1000, 20040 }) {
+					rtree.findClosest(lon, lat, searchRadius, limit, expected);
+					scan.findClosest(lon, lat, searchRadius, limit, actual);
+					TestCities.assertSameResults("Point " + lat + ", " + lon + ", radius " + searchRadius
+							+ ", limit " + limit, expected, actual, limit);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local geocoding service for the tests and the import benchmarks. It answers
+ * every request with a response of {@link GeocodeResponses}, seeded with the
+ * requested address, so the import runs the whole download and parse pipeline
+ * without network access. Addresses starting with {@link #UNKNOWN} are
+ * answered with ZERO_RESULTS. The same responses are also served in-process as
+ * a {@link Geocoder}, which leaves the HTTP round trip out.
+ *
+ * @author Rolandas
+ *
+ */
+
+public class StubGeocoder implements Geocoder, AutoCloseable {
+	static final String PATH = "/maps/api/geocode/xml";
+	static final String UNKNOWN = "Unknown";
+
+	static {
+		// Same as the query server: avoid the delayed ACK wait on kept-alive
+		// connections
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final HttpServer server;
+	private final ExecutorService workers;
+	private final AtomicInteger requests = new AtomicInteger();
+
+	/**
+	 * Creates the service for in-process requests only
+	 */
+	public StubGeocoder() {
+		server = null;
+		workers = null;
+	}
+
+	/**
+	 * Starts the service on a free loopback port
+	 *
+	 * @param threads Number of request handling threads
+	 * @throws IOException
+	 */
+	public StubGeocoder(int threads) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+		server.createContext(PATH, this::handle);
+		workers = Executors.newFixedThreadPool(threads);
+		server.setExecutor(workers);
+		server.start();
+	}
+
+	/**
+	 * @return Base URL to set with {@link CitiesDataImport#setBaseURL(String)}
+	 */
+	public String getURL() {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + PATH;
+	}
+
+	/**
+	 * @return Number of requests answered, over HTTP or in-process
+	 */
+	public int getRequests() {
+		return requests.get();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String query = exchange.getRequestURI().getRawQuery();
+		String address = "";
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				if (parameter.startsWith("address=")) {
+					address = URLDecoder.decode(parameter.substring("address=".length()), "UTF-8");
+				}
+			}
+		}
+		byte[] response = response(address);
+		exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=UTF-8");
+		exchange.sendResponseHeaders(200, response.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(response);
+		}
+		exchange.close();
+	}
+
+	@Override
+	public byte[] geocode(String cityName, String countryName) {
+		return response(cityName);
+	}
+
+	private byte[] response(String address) {
+		requests.incrementAndGet();
+		if (address.startsWith(UNKNOWN)) {
+			return GeocodeResponses.status("ZERO_RESULTS");
+		}
+		return GeocodeResponses.response(address, address.hashCode(), true);
+	}
+
+	@Override
+	public void close() {
+		if (server != null) {
+			server.stop(0);
+			workers.shutdownNow();
+		}
+	}
+}
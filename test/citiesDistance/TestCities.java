@@ -0,0 +1,91 @@
+package citiesDistance;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generated city datasets of the tests of the in-memory engines, and the
+ * comparison of their results
+ *
+ * @author Rolandas
+ *
+ */
+
+final class TestCities {
+
+	private TestCities() {
+	}
+
+	/**
+	 * @return Cities in Europe, some of them near the antimeridian and the poles,
+	 *         with their ids in ascending order
+	 */
+	static CityDataset dataset(int size, long seed) {
+		Random random = new Random(seed);
+		CityDataset dataset = new CityDataset(size);
+		for (int i = 0; i < size; i++) {
+			double lat, lon;
+			if (i % 10 == 0) {
+				lat = random.nextDouble() * 170 - 85;
+				lon = random.nextBoolean() ? 179 + random.nextDouble() : -180 + random.nextDouble();
+			} else if (i % 10 == 1) {
+				lat = (random.nextBoolean() ? 1 : -1) * (85 + random.nextDouble() * 4);
+				lon = random.nextDouble() * 360 - 180;
+			} else {
+				lat = 35 + random.nextDouble() * 30;
+				lon = -10 + random.nextDouble() * 40;
+			}
+			double height = 0.01 + random.nextDouble() * 0.2;
+			double width = 0.01 + random.nextDouble() * 0.3;
+			dataset.ids[i] = i + 1;
+			dataset.names[i] = "City " + i;
+			dataset.countries[i] = "Country " + i % 7;
+			dataset.centreLat[i] = lat;
+			dataset.centreLon[i] = lon;
+			dataset.swLat[i] = lat - height / 2;
+			dataset.neLat[i] = lat + height / 2;
+			dataset.swLon[i] = Math.max(lon - width / 2, -180);
+			dataset.neLon[i] = Math.min(lon + width / 2, 180);
+		}
+		return dataset;
+	}
+
+	/**
+	 * @return The bounds of a city of the dataset
+	 */
+	static Bounds bounds(CityDataset dataset, int i) {
+		return new Bounds(new Coordinates(dataset.neLat[i], dataset.neLon[i]),
+				new Coordinates(dataset.swLat[i], dataset.swLon[i]));
+	}
+
+	/**
+	 * Checks that both results have the same distances and the same cities. The
+	 * cities at the same distance may come in any order, and of the cities at
+	 * the distance where the limit cuts the result any may be chosen.
+	 */
+	static void assertSameResults(String query, QueryResult expected, QueryResult actual, int limit) {
+		assertEquals(query, expected.size(), actual.size());
+		for (int from = 0, to; from < expected.size(); from = to) {
+			for (to = from + 1; to < expected.size() && expected.getDistance(to) == expected.getDistance(from); to++) {
+			}
+			for (int k = from; k < to; k++) {
+				assertEquals(query, expected.getDistance(k), actual.getDistance(k), 0.0);
+			}
+			if (to < expected.size() || expected.size() < limit) {
+				assertEquals(query, ids(expected, from, to), ids(actual, from, to));
+			}
+		}
+	}
+
+	private static List<Integer> ids(QueryResult result, int from, int to) {
+		Integer[] ids = new Integer[to - from];
+		for (int i = from; i < to; i++) {
+			ids[i - from] = result.getCityId(i);
+		}
+		Arrays.sort(ids);
+		return Arrays.asList(ids);
+	}
+}
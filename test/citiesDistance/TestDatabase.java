@@ -0,0 +1,79 @@
+package citiesDistance;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Temporary SQLite database of the tests. The persistence unit is started once
+ * per process, so every test which uses the database has to create it before
+ * anything starts the persistence unit. The database is deleted when the
+ * process exits.
+ *
+ * @author Rolandas
+ *
+ */
+
+final class TestDatabase {
+	private static Path directory;
+
+	private TestDatabase() {
+	}
+
+	/**
+	 * Points the persistence unit to a new empty database file
+	 *
+	 * @throws IOException
+	 */
+	static synchronized void create() throws IOException {
+		if (directory == null) {
+			directory = Files.createTempDirectory("cities-test");
+			CitiesPersistence.setDatabaseURL("jdbc:sqlite:" + directory.resolve("CitiesDataDB.db"));
+			Runtime.getRuntime().addShutdownHook(new Thread(TestDatabase::delete));
+		}
+	}
+
+	/**
+	 * Deletes every city, so a test starts with an empty database
+	 */
+	static void clear() throws SQLException {
+		// The tables are created when the persistence unit is deployed
+		CitiesPersistence.getFactory().createEntityManager().close();
+		try (Connection connection = CitiesPersistence.openConnection();
+				Statement statement = connection.createStatement()) {
+			statement.executeUpdate(CityBoundsIndex.CREATE_TABLE);
+			statement.executeUpdate("DELETE FROM " + CityBoundsIndex.TABLE);
+			statement.executeUpdate("DELETE FROM CITY");
+		}
+	}
+
+	/**
+	 * @param sql Query of a single number
+	 * @return The number
+	 */
+	static long queryLong(String sql) throws SQLException {
+		try (Connection connection = CitiesPersistence.openConnection();
+				Statement statement = connection.createStatement();
+				ResultSet result = statement.executeQuery(sql)) {
+			result.next();
+			return result.getLong(1);
+		}
+	}
+
+	private static synchronized void delete() {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.deleteIfExists(file);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}